@@ -0,0 +1,76 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of drawing the axis values. The same chart is rendered with 
+ * and without its axis values, so the difference between the two is the time
+ * taken to draw them. The layout, including the measurement of the values, 
+ * is reused between renders.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class AxisValuesBenchmark {
+
+	@Param({"100", "1000", "4000", "8000"})
+	public int size;
+	
+	@Param({"1", "2"})
+	public int cellSize;
+	
+	private HeatChart withValues;
+	private HeatChart withoutValues;
+	
+	@Setup
+	public void setUp() {
+		double[][] zValues = BenchmarkData.randomMatrix(size);
+		
+		withValues = createChart(zValues);
+		withoutValues = createChart(zValues);
+		withoutValues.setShowXAxisValues(false);
+		withoutValues.setShowYAxisValues(false);
+	}
+	
+	private HeatChart createChart(double[][] zValues) {
+		HeatChart chart = new HeatChart(zValues);
+		chart.setCellSize(new Dimension(cellSize, cellSize));
+		chart.setXValues(0, 0.5);
+		return chart;
+	}
+	
+	@Benchmark
+	public Image renderWithAxisValues() {
+		return withValues.getChartImage();
+	}
+	
+	@Benchmark
+	public Image renderWithoutAxisValues() {
+		return withoutValues.getChartImage();
+	}
+}
@@ -0,0 +1,46 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.util.Random;
+
+/*
+ * Data shared by the benchmarks.
+ */
+final class BenchmarkData {
+
+	private BenchmarkData() {}
+	
+	/*
+	 * Returns a square matrix of random z-values between 0 and 1. The same 
+	 * seed is always used, so every run sees the same values.
+	 */
+	static double[][] randomMatrix(int size) {
+		Random random = new Random(1);
+		double[][] zValues = new double[size][size];
+		for (int y=0; y<size; y++) {
+			for (int x=0; x<size; x++) {
+				zValues[y][x] = random.nextDouble();
+			}
+		}
+		return zValues;
+	}
+	
+}
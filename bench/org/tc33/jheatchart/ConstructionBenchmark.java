@@ -0,0 +1,85 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of the work done before any drawing: constructing a chart, 
+ * which scans the z-values for their minimum and maximum, the separate 
+ * <code>min</code> and <code>max</code> scans, and measuring the components 
+ * of the chart, which is done by <code>ChartLayout</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class ConstructionBenchmark {
+
+	@Param({"100", "1000", "4000", "8000"})
+	public int size;
+	
+	private double[][] zValues;
+	private HeatChartSpec spec;
+	private Graphics2D graphics;
+	
+	@Setup
+	public void setUp() {
+		zValues = BenchmarkData.randomMatrix(size);
+		
+		HeatChart chart = new HeatChart(zValues);
+		chart.setTitle("Title");
+		chart.setXAxisLabel("X Axis");
+		chart.setYAxisLabel("Y Axis");
+		spec = chart.getSpec();
+		graphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+	
+	@Benchmark
+	public HeatChart construct() {
+		return new HeatChart(zValues);
+	}
+	
+	@Benchmark
+	public double min() {
+		return HeatChart.min(zValues);
+	}
+	
+	@Benchmark
+	public double max() {
+		return HeatChart.max(zValues);
+	}
+	
+	@Benchmark
+	public Object measureComponents() {
+		return new ChartLayout(spec, spec.zValues, spec.xValues, spec.yValues, graphics);
+	}
+}
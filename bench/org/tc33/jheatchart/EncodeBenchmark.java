@@ -0,0 +1,92 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of encoding a chart image that has already been rendered, 
+ * as a PNG with the chart's own encoder and with ImageIO, and as a JPEG. The
+ * encoded bytes are written to memory, and the size of the output is 
+ * returned so that it can be compared between runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class EncodeBenchmark {
+
+	@Param({"100", "1000", "4000"})
+	public int size;
+	
+	@Param({"1", "2"})
+	public int cellSize;
+	
+	private BufferedImage image;
+	private PngEncoder pngEncoder;
+	private ImageIOEncoder imageIOPngEncoder;
+	private ImageIOEncoder jpegEncoder;
+	
+	// Reset before each encoding, keeping its buffer once it has grown.
+	private ByteArrayOutputStream out;
+	
+	@Setup
+	public void setUp() {
+		HeatChart chart = new HeatChart(BenchmarkData.randomMatrix(size));
+		chart.setCellSize(new Dimension(cellSize, cellSize));
+		chart.setLowValueColour(Color.BLUE);
+		chart.setHighValueColour(Color.RED);
+		image = (BufferedImage) chart.getChartImage();
+		
+		pngEncoder = new PngEncoder();
+		imageIOPngEncoder = new ImageIOEncoder("png");
+		jpegEncoder = new ImageIOEncoder("jpg", 1.0f);
+		out = new ByteArrayOutputStream();
+	}
+	
+	@Benchmark
+	public int encodePng() throws IOException {
+		return encode(pngEncoder);
+	}
+	
+	@Benchmark
+	public int encodeImageIOPng() throws IOException {
+		return encode(imageIOPngEncoder);
+	}
+	
+	@Benchmark
+	public int encodeJpeg() throws IOException {
+		return encode(jpegEncoder);
+	}
+	
+	private int encode(ChartEncoder encoder) throws IOException {
+		out.reset();
+		encoder.encode(image, out);
+		return out.size();
+	}
+}
@@ -0,0 +1,68 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmark of rendering the heat map of a chart. Axis values are hidden
+ * so that the time is dominated by colouring and writing the cells. The 
+ * layout is measured once during warmup and then reused, so it is not part 
+ * of the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+public class HeatMapBenchmark {
+
+	@Param({"100", "1000", "4000", "8000"})
+	public int size;
+	
+	@Param({"1", "2"})
+	public int cellSize;
+	
+	// Logarithmic, linear and exponential.
+	@Param({"0.3", "1.0", "3.0"})
+	public double colourScale;
+	
+	private HeatChart chart;
+	
+	@Setup
+	public void setUp() {
+		chart = new HeatChart(BenchmarkData.randomMatrix(size));
+		chart.setCellSize(new Dimension(cellSize, cellSize));
+		chart.setShowXAxisValues(false);
+		chart.setShowYAxisValues(false);
+		chart.setLowValueColour(Color.BLUE);
+		chart.setHighValueColour(Color.RED);
+		chart.setColourScale(colourScale);
+	}
+	
+	@Benchmark
+	public Image renderHeatMap() {
+		return chart.getChartImage();
+	}
+}
@@ -0,0 +1,188 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.util.Arrays;
+
+/**
+ * The ways in which a block of z-values can be combined into a single value, 
+ * for use when a matrix of z-values is downsampled to fewer cells. NaN values
+ * are ignored, and a block made up of only NaN values aggregates to NaN.
+ * 
+ * @see HeatChart#setMaxHeatMapSize(java.awt.Dimension)
+ * @since 0.6
+ */
+public enum Aggregation {
+	
+	/**
+	 * The arithmetic mean of the z-values in the block.
+	 */
+	MEAN,
+	
+	/**
+	 * The largest of the z-values in the block.
+	 */
+	MAX,
+	
+	/**
+	 * The smallest of the z-values in the block.
+	 */
+	MIN,
+	
+	/**
+	 * The total of the z-values in the block.
+	 */
+	SUM;
+	
+	/**
+	 * Downsamples the given matrix by aggregating each block of 
+	 * <tt>rowBlock</tt> by <tt>columnBlock</tt> z-values into one value of a 
+	 * new matrix. Blocks along the bottom and right edges may be smaller where
+	 * the dimensions of the matrix are not an exact multiple of the block 
+	 * size.
+	 * 
+	 * <p>
+	 * The source matrix is read in one pass, a row at a time, and only the 
+	 * downsampled matrix is held in memory.
+	 * 
+	 * @param source the matrix to downsample.
+	 * @param rowBlock the number of rows of the source aggregated into each 
+	 * row of the result.
+	 * @param columnBlock the number of columns of the source aggregated into 
+	 * each column of the result.
+	 * @return a new matrix of the aggregated z-values.
+	 */
+	public FlatHeatMatrix downsample(HeatMatrix source, int rowBlock, int columnBlock) {
+		if (rowBlock < 1 || columnBlock < 1) {
+			throw new IllegalArgumentException("Block dimensions must be at least 1.");
+		}
+		
+		int rows = source.getRowCount();
+		int columns = source.getColumnCount();
+		int outRows = ((rows - 1) / rowBlock) + 1;
+		int outColumns = ((columns - 1) / columnBlock) + 1;
+		
+		double[] result = new double[outRows * outColumns];
+		int[] counts = new int[outColumns];
+		double[] row = new double[columns];
+		
+		for (int outRow=0; outRow<outRows; outRow++) {
+			int offset = outRow * outColumns;
+			Arrays.fill(result, offset, offset + outColumns, initialValue());
+			Arrays.fill(counts, 0);
+			
+			int toRow = Math.min(rows, (outRow + 1) * rowBlock);
+			for (int y=outRow*rowBlock; y<toRow; y++) {
+				source.getRow(y, row);
+				
+				int x = 0;
+				for (int outColumn=0; outColumn<outColumns; outColumn++) {
+					int toColumn = Math.min(columns, x + columnBlock);
+					double value = result[offset + outColumn];
+					int count = 0;
+					
+					for (; x<toColumn; x++) {
+						double z = row[x];
+						if (z != z) {
+							// Skip NaN.
+							continue;
+						}
+						value = combine(value, z);
+						count++;
+					}
+					
+					result[offset + outColumn] = value;
+					counts[outColumn] += count;
+				}
+			}
+			
+			for (int outColumn=0; outColumn<outColumns; outColumn++) {
+				result[offset + outColumn] = complete(result[offset + outColumn], counts[outColumn]);
+			}
+		}
+		
+		return new FlatHeatMatrix(result, outRows, outColumns);
+	}
+	
+	/*
+	 * Aggregates the z-values of one block of the source matrix, combining 
+	 * them in the same order as downsample so that the result is identical.
+	 */
+	double aggregate(HeatMatrix source, int fromRow, int toRow, int fromColumn, int toColumn) {
+		double value = initialValue();
+		int count = 0;
+		for (int y=fromRow; y<toRow; y++) {
+			for (int x=fromColumn; x<toColumn; x++) {
+				double z = source.get(y, x);
+				if (z != z) {
+					// Skip NaN.
+					continue;
+				}
+				value = combine(value, z);
+				count++;
+			}
+		}
+		return complete(value, count);
+	}
+	
+	/*
+	 * The value an aggregate starts from before any z-values are combined.
+	 */
+	double initialValue() {
+		switch (this) {
+		case MAX:
+			return Double.NEGATIVE_INFINITY;
+		case MIN:
+			return Double.POSITIVE_INFINITY;
+		default:
+			return 0;
+		}
+	}
+	
+	/*
+	 * Combines a z-value into the aggregate so far. Means are summed and then
+	 * divided once the whole block has been combined. Two aggregates of 
+	 * separate blocks may be combined in the same way.
+	 */
+	double combine(double aggregate, double z) {
+		switch (this) {
+		case MAX:
+			return (z > aggregate) ? z : aggregate;
+		case MIN:
+			return (z < aggregate) ? z : aggregate;
+		default:
+			return aggregate + z;
+		}
+	}
+	
+	/*
+	 * Returns the final value of an aggregate of the given number of 
+	 * z-values, which is NaN if there were none.
+	 */
+	double complete(double aggregate, int count) {
+		if (count == 0) {
+			return Double.NaN;
+		} else if (this == MEAN) {
+			return aggregate / count;
+		}
+		return aggregate;
+	}
+	
+}
@@ -0,0 +1,244 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A <code>BatchRenderer</code> renders many charts that share every setting 
+ * of a {@link HeatChartSpec} and differ only in their z-values, such as a 
+ * chart for each of a large number of series. Everything but the heat map 
+ * is the same for every chart, so it is done just once, when the renderer 
+ * is constructed: the components are measured, the colours and palette are 
+ * looked up, and the chart is drawn with the spec's own z-values, axis 
+ * values and all, as a template. Each chart then only costs filling the 
+ * cells of its heat map and encoding it.
+ * 
+ * <p>
+ * Each thread rendering a batch keeps its own copy of the template image, 
+ * whose heat map is redrawn for every chart, and its own buffer to encode 
+ * into, so no pixels or buffers are allocated per chart other than the 
+ * encoded bytes handed to the sink. Every set of z-values must have the 
+ * same dimensions as those of the spec, and is coloured against the spec's 
+ * low and high values, so all charts of a batch share one colour scale.
+ * 
+ * <p>
+ * The charts rendered are identical to those that a 
+ * {@link HeatChartRenderer} renders from the spec with each set of z-values
+ * in place of its own.
+ * 
+ * @see ChartSink
+ * @since 0.6
+ */
+public final class BatchRenderer {
+
+	private final HeatChartSpec spec;
+	private final ChartEncoder encoder;
+	
+	// Measurements shared by every chart of the batch.
+	private final ChartLayout layout;
+	
+	// Palette index of each colour of the colour map, or null for RGB images.
+	private final byte[] paletteIndices;
+	
+	// The whole chart drawn from the spec, which each chart's heat map replaces.
+	private final BufferedImage template;
+	
+	/**
+	 * Constructs a renderer of charts with the settings of the given spec, 
+	 * encoded with the given encoder, and draws the template that all the 
+	 * charts are drawn on. Charts are generated with transparency only if the
+	 * encoder supports it.
+	 * 
+	 * @param spec the settings of every chart, and the z-values that 
+	 * determine the dimensions of each chart's z-values.
+	 * @param encoder the encoder to encode charts with, which must be safe 
+	 * for use from multiple threads if charts are rendered in parallel.
+	 */
+	public BatchRenderer(HeatChartSpec spec, ChartEncoder encoder) {
+		this.spec = spec;
+		this.encoder = encoder;
+		
+		HeatChartRenderer renderer = new HeatChartRenderer();
+		ChartData chart = HeatChartRenderer.getChartData(spec);
+		this.layout = renderer.getLayout(spec, chart);
+		this.paletteIndices = spec.indexedColour ? new byte[spec.colourMap.size()] : null;
+		this.template = renderer.drawChart(spec, encoder.isAlphaSupported(), layout, chart, paletteIndices);
+	}
+	
+	/**
+	 * Returns the spec holding the settings of every chart.
+	 * 
+	 * @return the spec of the charts.
+	 */
+	public HeatChartSpec getSpec() {
+		return spec;
+	}
+	
+	/**
+	 * Returns the encoder that charts are encoded with.
+	 * 
+	 * @return the chart encoder.
+	 */
+	public ChartEncoder getEncoder() {
+		return encoder;
+	}
+	
+	/**
+	 * Renders a chart for each of the given z-values on the calling thread, 
+	 * in order, and writes them to the given sink.
+	 * 
+	 * @param zValues the z-values of each chart.
+	 * @param sink the sink to write the encoded charts to.
+	 * @throws IOException if a chart cannot be encoded or written.
+	 * @throws IllegalArgumentException if any z-values do not have the same
+	 * dimensions as those of the spec.
+	 */
+	public void render(Iterator<? extends HeatMatrix> zValues, ChartSink sink) throws IOException {
+		render(zValues, sink, null);
+	}
+	
+	/**
+	 * Renders a chart for each of the given z-values, and writes them to the
+	 * given sink. A task for each processor is run on the given executor, 
+	 * each taking the next z-values from the iterator until there are none 
+	 * left, so the sink is written to from multiple threads, and charts are 
+	 * written out of order. The iterator is only ever used by one thread at 
+	 * a time. If any chart fails, no further charts are started.
+	 * 
+	 * @param zValues the z-values of each chart.
+	 * @param sink the sink to write the encoded charts to.
+	 * @param executor the executor to render charts on, or <tt>null</tt> to 
+	 * render them on the calling thread.
+	 * @throws IOException if a chart cannot be encoded or written.
+	 * @throws IllegalArgumentException if any z-values do not have the same
+	 * dimensions as those of the spec.
+	 */
+	public void render(Iterator<? extends HeatMatrix> zValues, ChartSink sink, ExecutorService executor) throws IOException {
+		Batch batch = new Batch(zValues, sink);
+		
+		try {
+			if (executor == null) {
+				new Worker(batch).call();
+			} else {
+				int noWorkers = Runtime.getRuntime().availableProcessors();
+				List<Worker> workers = new ArrayList<Worker>(noWorkers);
+				for (int i=0; i<noWorkers; i++) {
+					workers.add(new Worker(batch));
+				}
+				Tasks.invokeAll(executor, workers, "rendering charts");
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/*
+	 * The z-values and sink of one batch, shared by all the workers 
+	 * rendering it.
+	 */
+	private static final class Batch {
+		
+		final Iterator<? extends HeatMatrix> zValues;
+		final ChartSink sink;
+		
+		// Index of the next z-values, and whether any chart has failed.
+		int next;
+		boolean failed;
+		
+		Batch(Iterator<? extends HeatMatrix> zValues, ChartSink sink) {
+			this.zValues = zValues;
+			this.sink = sink;
+		}
+	}
+	
+	/*
+	 * Renders charts for the z-values of a batch, one after another, into its
+	 * own copy of the template image, until there are no z-values left.
+	 */
+	private final class Worker implements Callable<Object> {
+		
+		private final Batch batch;
+		private final BufferedImage image;
+		private final DataBuffer pixels;
+		private final ByteArrayOutputStream buffer;
+		
+		Worker(Batch batch) {
+			this.batch = batch;
+			this.image = new BufferedImage(template.getColorModel(), template.copyData(null), false, null);
+			this.pixels = image.getRaster().getDataBuffer();
+			this.buffer = new ByteArrayOutputStream();
+		}
+		
+		@Override
+		public Object call() {
+			boolean finished = false;
+			try {
+				while (true) {
+					int index;
+					HeatMatrix zValues;
+					synchronized (batch) {
+						if (batch.failed || !batch.zValues.hasNext()) {
+							break;
+						}
+						index = batch.next++;
+						zValues = batch.zValues.next();
+					}
+					
+					drawHeatMap(zValues);
+					
+					buffer.reset();
+					encoder.encode(image, buffer);
+					batch.sink.writeChart(index, buffer.toByteArray());
+				}
+				finished = true;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				if (!finished) {
+					synchronized (batch) {
+						batch.failed = true;
+					}
+				}
+			}
+			return null;
+		}
+		
+		/*
+		 * Draws the heat map of the given z-values over that of the image. 
+		 * The heat map covers its whole area, so nothing else is redrawn.
+		 */
+		private void drawHeatMap(HeatMatrix zValues) {
+			HeatMatrix specValues = spec.zValues;
+			if (zValues.getRowCount() != specValues.getRowCount() 
+					|| zValues.getColumnCount() != specValues.getColumnCount()) {
+				throw new IllegalArgumentException("Z-values must be " + specValues.getRowCount() + " by " 
+						+ specValues.getColumnCount() + ": " + zValues.getRowCount() + " by " + zValues.getColumnCount());
+			}
+			
+			ChartData chart = HeatChartRenderer.getChartData(spec, zValues);
+			HeatChartRenderer.drawHeatMapRows(spec.colourMap, pixels, 0, paletteIndices, image.getWidth(), layout, chart.data, chart.low, chart.high, 0, layout.rows);
+		}
+	}
+	
+}
@@ -0,0 +1,48 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+/*
+ * The z-values, axis values and range of values that a chart is drawn 
+ * from, after any downsampling.
+ */
+final class ChartData {
+	
+	final HeatMatrix data;
+	final Object[] xValues;
+	final Object[] yValues;
+	final double low;
+	final double high;
+	
+	// How many cells of the z-values are aggregated into each cell of data.
+	final int rowBlock;
+	final int columnBlock;
+	
+	ChartData(HeatMatrix data, Object[] xValues, Object[] yValues, double low, double high, int rowBlock, int columnBlock) {
+		this.data = data;
+		this.xValues = xValues;
+		this.yValues = yValues;
+		this.low = low;
+		this.high = high;
+		this.rowBlock = rowBlock;
+		this.columnBlock = columnBlock;
+	}
+	
+}
@@ -0,0 +1,51 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import jdk.jfr.*;
+
+/*
+ * Flight recorder event for encoding a chart image to a file, stream or 
+ * channel.
+ */
+@Name("org.tc33.jheatchart.ChartEncode")
+@Label("Chart Encode")
+@Category("JHeatChart")
+@Description("Encoding of a heat chart image")
+final class ChartEncodeEvent extends Event {
+
+	@Label("Format")
+	String format;
+	
+	@Label("Width")
+	int width;
+	
+	@Label("Height")
+	int height;
+	
+	@Label("Bytes Written")
+	@DataAmount(DataAmount.BYTES)
+	long bytes;
+	
+	@Label("Banded")
+	@Description("Whether the chart was drawn and encoded in bands")
+	boolean banded;
+	
+}
@@ -0,0 +1,60 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+
+/**
+ * A <code>ChartEncoder</code> encodes generated chart images into an image 
+ * file format, for use with the <code>saveToFile</code>, 
+ * <code>saveToStream</code> and <code>saveToChannel</code> methods of 
+ * {@link HeatChart}. 
+ * 
+ * <p>
+ * Encoders may be shared between charts, and used from multiple threads at 
+ * once.
+ * 
+ * @see ImageIOEncoder
+ * @since 0.6
+ */
+public interface ChartEncoder {
+
+	/**
+	 * Returns whether the image format can hold transparency. If it can then 
+	 * charts are generated with an alpha channel before being encoded, 
+	 * otherwise they are generated without one.
+	 * 
+	 * @return true if the encoder can encode images with an alpha channel.
+	 */
+	boolean isAlphaSupported();
+	
+	/**
+	 * Encodes the given image, writing it to the given stream. The stream is 
+	 * not closed.
+	 * 
+	 * @param image the chart image to encode.
+	 * @param out the stream to write the encoded image to.
+	 * @throws IOException if the image cannot be encoded or the stream cannot
+	 * be written to.
+	 */
+	void encode(BufferedImage image, OutputStream out) throws IOException;
+	
+}
@@ -0,0 +1,250 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.*;
+
+/*
+ * The measured sizes and key positions of all the components of a chart, for
+ * a given set of chart settings and dimensions of z-values. A layout depends 
+ * only on the fonts, text and sizes of a chart, not on the z-values 
+ * themselves, so it can be reused for as long as those are unchanged.
+ */
+final class ChartLayout {
+
+	// Dimensions of the z-values and cells that the layout was measured for.
+	final int rows;
+	final int columns;
+	final int cellWidth;
+	final int cellHeight;
+	
+	// Overall chart and heat map dimensions.
+	final Dimension chartSize;
+	final Dimension heatMapSize;
+	
+	// Title dimensions.
+	final Dimension titleSize;
+	final int titleAscent;
+	
+	// Axis label dimensions.
+	final Dimension xAxisLabelSize;
+	final int xAxisLabelDescent;
+	final Dimension yAxisLabelSize;
+	final int yAxisLabelAscent;
+	
+	// Axis value dimensions.
+	final int xAxisValuesHeight;
+	final int xAxisValuesAscent;
+	final int xAxisValuesWidthMax;
+	final int yAxisValuesHeight;
+	final int yAxisValuesAscent;
+	final int yAxisValuesWidthMax;
+	
+	// The text of each axis value and its width, or null if not shown.
+	final String[] xValueStrings;
+	final int[] xValueWidths;
+	final String[] yValueStrings;
+	final int[] yValueWidths;
+	
+	// Key co-ordinate positions.
+	final Point heatMapTL;
+	final Point heatMapBR;
+	final Point heatMapC;
+	
+	/*
+	 * Measures all the components of the chart described by the given spec,
+	 * for the given z-values and axis values, using the font metrics of the 
+	 * given graphics.
+	 */
+	ChartLayout(HeatChartSpec spec, HeatMatrix data, Object[] xValues, Object[] yValues, Graphics2D graphics) {
+		//TODO This would be a good place to check that all settings have sensible values or throw illegal state exception.
+		
+		Dimension cellSize = spec.getCellSize();
+		int margin = spec.getChartMargin();
+		int axisThickness = spec.getAxisThickness();
+		
+		rows = data.getRowCount();
+		columns = data.getColumnCount();
+		cellWidth = cellSize.width;
+		cellHeight = cellSize.height;
+		
+		// Calculate title dimensions.
+		String title = spec.getTitle();
+		if (title != null) {
+			FontMetrics metrics = graphics.getFontMetrics(spec.getTitleFont());
+			titleSize = new Dimension(metrics.stringWidth(title), metrics.getHeight());
+			titleAscent = metrics.getAscent();
+		} else {
+			titleSize = new Dimension(0, 0);
+			titleAscent = 0;
+		}
+		
+		// Calculate x-axis label dimensions.
+		String xAxisLabel = spec.getXAxisLabel();
+		if (xAxisLabel != null) {
+			FontMetrics metrics = graphics.getFontMetrics(spec.getAxisLabelsFont());
+			xAxisLabelSize = new Dimension(metrics.stringWidth(xAxisLabel), metrics.getHeight());
+			xAxisLabelDescent = metrics.getDescent();
+		} else {
+			xAxisLabelSize = new Dimension(0, 0);
+			xAxisLabelDescent = 0;
+		}
+		
+		// Calculate y-axis label dimensions.
+		String yAxisLabel = spec.getYAxisLabel();
+		if (yAxisLabel != null) {
+			FontMetrics metrics = graphics.getFontMetrics(spec.getAxisLabelsFont());
+			yAxisLabelSize = new Dimension(metrics.stringWidth(yAxisLabel), metrics.getHeight());
+			yAxisLabelAscent = metrics.getAscent();
+		} else {
+			yAxisLabelSize = new Dimension(0, 0);
+			yAxisLabelAscent = 0;
+		}
+		
+		// Calculate x-axis value dimensions.
+		if (spec.isShowXAxisValues()) {
+			FontMetrics metrics = graphics.getFontMetrics(spec.getAxisValuesFont());
+			xAxisValuesHeight = metrics.getHeight();
+			xAxisValuesAscent = metrics.getAscent();
+			xValueStrings = new String[xValues.length];
+			xValueWidths = new int[xValues.length];
+			xAxisValuesWidthMax = measureValues(metrics, xValues, xValueStrings, xValueWidths);
+		} else {
+			xAxisValuesHeight = 0;
+			xAxisValuesAscent = 0;
+			xAxisValuesWidthMax = 0;
+			xValueStrings = null;
+			xValueWidths = null;
+		}
+		
+		// Calculate y-axis value dimensions.
+		if (spec.isShowYAxisValues()) {
+			FontMetrics metrics = graphics.getFontMetrics(spec.getAxisValuesFont());
+			yAxisValuesHeight = metrics.getHeight();
+			yAxisValuesAscent = metrics.getAscent();
+			yValueStrings = new String[yValues.length];
+			yValueWidths = new int[yValues.length];
+			yAxisValuesWidthMax = measureValues(metrics, yValues, yValueStrings, yValueWidths);
+		} else {
+			yAxisValuesHeight = 0;
+			yAxisValuesAscent = 0;
+			yAxisValuesWidthMax = 0;
+			yValueStrings = null;
+			yValueWidths = null;
+		}
+		
+		// Calculate heatmap dimensions.
+		int heatMapWidth = (columns * cellWidth);
+		int heatMapHeight = (rows * cellHeight);
+		heatMapSize = new Dimension(heatMapWidth, heatMapHeight);
+		
+		int yValuesHorizontalSize = 0;
+		if (spec.isYValuesHorizontal()) {
+			yValuesHorizontalSize = yAxisValuesWidthMax;
+		} else {
+			yValuesHorizontalSize = yAxisValuesHeight;
+		}
+		
+		int xValuesVerticalSize = 0;
+		if (spec.isXValuesHorizontal()) {
+			xValuesVerticalSize = xAxisValuesHeight;
+		} else {
+			xValuesVerticalSize = xAxisValuesWidthMax;
+		}
+		
+		// Calculate chart dimensions.
+		int chartWidth = heatMapWidth + (2 * margin) + yAxisLabelSize.height + yValuesHorizontalSize + axisThickness;
+		int chartHeight = heatMapHeight + (2 * margin) + xAxisLabelSize.height + xValuesVerticalSize + titleSize.height + axisThickness;
+		chartSize = new Dimension(chartWidth, chartHeight);
+		
+		// Top-left of heat map.
+		int x = margin + axisThickness + yAxisLabelSize.height + yValuesHorizontalSize;
+		int y = titleSize.height + margin;
+		heatMapTL = new Point(x, y);
+
+		// Bottom-right of heat map.
+		x = heatMapTL.x + heatMapSize.width;
+		y = heatMapTL.y + heatMapSize.height;
+		heatMapBR = new Point(x, y);
+		
+		// Centre of heat map.
+		x = heatMapTL.x + (heatMapSize.width / 2);
+		y = heatMapTL.y + (heatMapSize.height / 2);
+		heatMapC = new Point(x, y);
+	}
+	
+	/*
+	 * Fills in the text and width of each of the axis values, returning the 
+	 * largest width.
+	 */
+	private static int measureValues(FontMetrics metrics, Object[] values, String[] strings, int[] widths) {
+		int widthMax = 0;
+		for (int i=0; i<values.length; i++) {
+			strings[i] = values[i].toString();
+			widths[i] = metrics.stringWidth(strings[i]);
+			if (widths[i] > widthMax) {
+				widthMax = widths[i];
+			}
+		}
+		return widthMax;
+	}
+	
+	/*
+	 * Moves the text of each x-axis value one column towards the first and 
+	 * measures the given value as the new last column, for a chart whose 
+	 * columns have scrolled along by one. Returns false without changing 
+	 * anything if that would change the widest x-axis value, as the chart 
+	 * must then be measured again.
+	 */
+	boolean scrollXValues(Object value, FontMetrics metrics) {
+		if (xValueStrings == null) {
+			return true;
+		}
+		
+		String valueString = value.toString();
+		int valueWidth = metrics.stringWidth(valueString);
+		int widthMax = valueWidth;
+		for (int i=1; i<xValueWidths.length; i++) {
+			if (xValueWidths[i] > widthMax) {
+				widthMax = xValueWidths[i];
+			}
+		}
+		if (widthMax != xAxisValuesWidthMax) {
+			return false;
+		}
+		
+		int last = xValueStrings.length - 1;
+		System.arraycopy(xValueStrings, 1, xValueStrings, 0, last);
+		System.arraycopy(xValueWidths, 1, xValueWidths, 0, last);
+		xValueStrings[last] = valueString;
+		xValueWidths[last] = valueWidth;
+		return true;
+	}
+	
+	/*
+	 * Whether this layout is still correct for z-values of the given 
+	 * dimensions, drawn with cells of the given size.
+	 */
+	boolean fits(HeatMatrix data, Dimension cellSize) {
+		return rows == data.getRowCount() && columns == data.getColumnCount()
+				&& cellWidth == cellSize.width && cellHeight == cellSize.height;
+	}
+	
+}
@@ -0,0 +1,60 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import jdk.jfr.*;
+
+/*
+ * Flight recorder event for the generation of a whole chart image, from 
+ * reading the z-values to drawing the last component.
+ */
+@Name("org.tc33.jheatchart.ChartRender")
+@Label("Chart Render")
+@Category("JHeatChart")
+@Description("Generation of a heat chart image")
+final class ChartRenderEvent extends Event {
+
+	@Label("Width")
+	int width;
+	
+	@Label("Height")
+	int height;
+	
+	@Label("Rows")
+	@Description("Rows of cells drawn, after any downsampling")
+	int rows;
+	
+	@Label("Columns")
+	@Description("Columns of cells drawn, after any downsampling")
+	int columns;
+	
+	@Label("Cell Count")
+	long cells;
+	
+	@Label("Colour Scale")
+	double colourScale;
+	
+	@Label("Indexed Colour")
+	boolean indexedColour;
+	
+	@Label("Alpha")
+	boolean alpha;
+	
+}
@@ -0,0 +1,45 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.io.IOException;
+
+/**
+ * A <code>ChartSink</code> receives the encoded charts generated by a 
+ * {@link BatchRenderer}. Charts are written from multiple threads at once, 
+ * and not necessarily in order, when a batch is rendered in parallel, so 
+ * implementations must be thread safe.
+ * 
+ * @see BatchRenderer
+ * @since 0.6
+ */
+public interface ChartSink {
+
+	/**
+	 * Stores one encoded chart.
+	 * 
+	 * @param index the position in the batch of the z-values the chart was 
+	 * drawn from, starting at 0.
+	 * @param data the encoded chart image.
+	 * @throws IOException if the chart cannot be stored.
+	 */
+	void writeChart(int index, byte[] data) throws IOException;
+	
+}
@@ -0,0 +1,181 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.Color;
+
+/*
+ * The mapping from z-values to the colours of heat map cells, for a pair of 
+ * low and high value colours and a colour scale. A colour map is immutable, 
+ * so it can be shared between charts and threads.
+ */
+final class ColourMap {
+
+	// How many RGB steps there are between the high and low colours.
+	private final int colourValueDistance;
+	
+	// Packed RGB colour for each step from the low colour to the high colour.
+	private final int[] colourTable;
+	
+	// Control variable for mapping z-values to colours.
+	private final double colourScale;
+	
+	/*
+	 * Builds the colour map for the given colours and scale. The distance is
+	 * the number of steps between one colour and the other using an RGB 
+	 * coding with 0-255 values for each of red, green and blue. So the 
+	 * maximum colour distance is 255 + 255 + 255.
+	 */
+	ColourMap(Color lowValueColour, Color highValueColour, double colourScale) {
+		int r1 = lowValueColour.getRed();
+		int g1 = lowValueColour.getGreen();
+		int b1 = lowValueColour.getBlue();
+		int r2 = highValueColour.getRed();
+		int g2 = highValueColour.getGreen();
+		int b2 = highValueColour.getBlue();
+		
+		int distance = Math.abs(r1 - r2);
+		distance += Math.abs(g1 - g2);
+		distance += Math.abs(b1 - b2);
+		
+		this.colourValueDistance = distance;
+		this.colourTable = createColourTable(lowValueColour, highValueColour, distance);
+		this.colourScale = colourScale;
+	}
+	
+	/*
+	 * Builds the lookup table of colours for every step from the low colour to 
+	 * the high colour. Each step shifts whichever of red, green or blue is 
+	 * furthest from the high colour by one, so entry n is the colour after n 
+	 * shifts and the final entry is the high colour itself.
+	 */
+	private static int[] createColourTable(Color lowValueColour, Color highValueColour, int colourValueDistance) {
+		int r = lowValueColour.getRed();
+		int g = lowValueColour.getGreen();
+		int b = lowValueColour.getBlue();
+		int r2 = highValueColour.getRed();
+		int g2 = highValueColour.getGreen();
+		int b2 = highValueColour.getBlue();
+		
+		int[] colourTable = new int[colourValueDistance + 1];
+		colourTable[0] = packColour(r, g, b);
+		
+		for (int i=1; i<colourTable.length; i++) {
+			int rDistance = r - r2;
+			int gDistance = g - g2;
+			int bDistance = b - b2;
+			
+			if ((Math.abs(rDistance) >= Math.abs(gDistance))
+						&& (Math.abs(rDistance) >= Math.abs(bDistance))) {
+				// Red must be the largest.
+				r = changeColourValue(r, rDistance);
+			} else if (Math.abs(gDistance) >= Math.abs(bDistance)) {
+				// Green must be the largest.
+				g = changeColourValue(g, gDistance);
+			} else {
+				// Blue must be the largest.
+				b = changeColourValue(b, bDistance);
+			}
+			
+			colourTable[i] = packColour(r, g, b);
+		}
+		return colourTable;
+	}
+	
+	/*
+	 * Packs the given red, green and blue values into an opaque ARGB int.
+	 */
+	private static int packColour(int r, int g, int b) {
+		return 0xFF000000 | (r << 16) | (g << 8) | b;
+	}
+	
+	private static int changeColourValue(int colourValue, int colourDistance) {
+		if (colourDistance < 0) {
+			return colourValue+1;
+		} else if (colourDistance > 0) {
+			return colourValue-1;
+		} else {
+			// This shouldn't actually happen here.
+			return colourValue;
+		}
+	}
+	
+	/*
+	 * Returns the number of colours in the table, one more than the number of
+	 * steps from the low colour to the high colour.
+	 */
+	int size() {
+		return colourTable.length;
+	}
+	
+	/*
+	 * Returns the packed ARGB colour at the given index of the table.
+	 */
+	int getColour(int index) {
+		return colourTable[index];
+	}
+	
+	/*
+	 * Determines what colour a heat map cell should be based upon the cell 
+	 * value, returned as a packed ARGB int.
+	 */
+	int getCellColour(double data, double min, double max) {
+		return colourTable[getColourIndex(data, min, max)];
+	}
+	
+	/*
+	 * Determines what colour a heat map cell should be based upon the cell 
+	 * values. The colour is returned as its index in the precalculated colour
+	 * table.
+	 */
+	int getColourIndex(double data, double min, double max) {		
+		double range = max - min;
+		double position = data - min;
+
+		// What proportion of the way through the possible values is that.
+		double percentPosition = position / range;
+		
+		// Which colour group does that put us in.
+		int colourPosition = getColourPosition(percentPosition);
+		
+		// Positions beyond either end of the range take the end colours.
+		if (colourPosition < 0) {
+			colourPosition = 0;
+		} else if (colourPosition > colourValueDistance) {
+			colourPosition = colourValueDistance;
+		}
+		
+		return colourPosition;
+	}
+	
+	/*
+	 * Returns how many colour shifts are required from the lowValueColour to 
+	 * get to the correct colour position. The result will be different 
+	 * depending on the colour scale used: LINEAR, LOGARITHMIC, EXPONENTIAL.
+	 */
+	private int getColourPosition(double percentPosition) {
+		if (colourScale == HeatChart.SCALE_LINEAR) {
+			// Math.pow(x, 1.0) is always x, so avoid the call.
+			return (int) Math.round(colourValueDistance * percentPosition);
+		}
+		return (int) Math.round(colourValueDistance * Math.pow(percentPosition, colourScale));
+	}
+	
+}
@@ -0,0 +1,67 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.io.*;
+
+/**
+ * A {@link TileSink} that stores tiles as files in the <tt>z/x/y</tt> 
+ * directory layout used by slippy map viewers, so tile 
+ * <tt>(zoom, x, y)</tt> is written to 
+ * <tt>root/zoom/x/y.extension</tt>.
+ * 
+ * @since 0.6
+ */
+public class DirectoryTileSink implements TileSink {
+
+	private final File root;
+	private final String extension;
+	
+	/**
+	 * Constructs a sink that writes tiles beneath the given directory, with 
+	 * the given file extension.
+	 * 
+	 * @param root the directory to write the zoom level directories to.
+	 * @param extension the file extension of the tiles, such as 
+	 * <tt>"png"</tt>.
+	 */
+	public DirectoryTileSink(File root, String extension) {
+		this.root = root;
+		this.extension = extension;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void writeTile(int zoom, int x, int y, byte[] data) throws IOException {
+		File dir = new File(new File(root, Integer.toString(zoom)), Integer.toString(x));
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Unable to create tile directory: " + dir);
+		}
+		
+		OutputStream out = new FileOutputStream(new File(dir, y + "." + extension));
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+	
+}
@@ -0,0 +1,168 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+/**
+ * A {@link HeatMatrix} backed by a single flat array of <tt>doubles</tt>, 
+ * holding the z-values in row-major order. 
+ * 
+ * <p>
+ * The rows of the matrix need not be packed together. The position of the 
+ * first z-value is given by an offset into the array, and the distance between
+ * the start of one row and the start of the next by a row stride. This allows 
+ * a matrix to be a view of part of a larger grid, as returned by 
+ * <code>subMatrix(int, int, int, int)</code>. The array is used directly, it 
+ * is not copied, so changes to the array are seen by the matrix.
+ * 
+ * @since 0.6
+ */
+public class FlatHeatMatrix implements MutableHeatMatrix {
+
+	private final double[] values;
+	private final int offset;
+	private final int rows;
+	private final int columns;
+	private final int rowStride;
+	
+	/**
+	 * Constructs a matrix of tightly packed rows, backed by the given array.
+	 * 
+	 * @param values the z-values in row-major order. The array must have at 
+	 * least <code>rows * columns</code> elements.
+	 * @param rows the number of rows in the matrix.
+	 * @param columns the number of columns in the matrix.
+	 */
+	public FlatHeatMatrix(double[] values, int rows, int columns) {
+		this(values, 0, rows, columns, columns);
+	}
+	
+	/**
+	 * Constructs a matrix backed by part of the given array. The z-value at 
+	 * row <tt>r</tt> and column <tt>c</tt> is found at index 
+	 * <code>offset + (r * rowStride) + c</code>.
+	 * 
+	 * @param values the array holding the z-values.
+	 * @param offset the index of the first z-value of the first row.
+	 * @param rows the number of rows in the matrix.
+	 * @param columns the number of columns in the matrix.
+	 * @param rowStride the distance in the array between the start of one row
+	 * and the start of the next, which must be at least the number of columns.
+	 */
+	public FlatHeatMatrix(double[] values, int offset, int rows, int columns, int rowStride) {
+		if (rows < 1 || columns < 1) {
+			throw new IllegalArgumentException("Matrix must have at least one row and column.");
+		}
+		if (offset < 0 || rowStride < columns) {
+			throw new IllegalArgumentException("Illegal offset or row stride.");
+		}
+		if (offset + ((long) (rows - 1) * rowStride) + columns > values.length) {
+			throw new IllegalArgumentException("Array is too small for the matrix dimensions.");
+		}
+		
+		this.values = values;
+		this.offset = offset;
+		this.rows = rows;
+		this.columns = columns;
+		this.rowStride = rowStride;
+	}
+	
+	/**
+	 * Returns a view of a rectangular region of this matrix. The view shares 
+	 * the same backing array.
+	 * 
+	 * @param row the index of the first row of the region.
+	 * @param column the index of the first column of the region.
+	 * @param rows the number of rows in the region.
+	 * @param columns the number of columns in the region.
+	 * @return a matrix of the z-values in the given region.
+	 */
+	public FlatHeatMatrix subMatrix(int row, int column, int rows, int columns) {
+		if (row < 0 || column < 0 || row + rows > this.rows || column + columns > this.columns) {
+			throw new IllegalArgumentException("Region is outside of the matrix.");
+		}
+		
+		return new FlatHeatMatrix(values, offset + (row * rowStride) + column, rows, columns, rowStride);
+	}
+	
+	/**
+	 * Returns the array that backs this matrix.
+	 * 
+	 * @return the backing array of z-values.
+	 */
+	public double[] getValues() {
+		return values;
+	}
+	
+	/**
+	 * Returns the index in the backing array of the first z-value of the first
+	 * row.
+	 * 
+	 * @return the offset of the matrix in the backing array.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Returns the distance in the backing array between the start of one row 
+	 * and the start of the next.
+	 * 
+	 * @return the row stride.
+	 */
+	public int getRowStride() {
+		return rowStride;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getColumnCount() {
+		return columns;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public double get(int row, int column) {
+		return values[offset + (row * rowStride) + column];
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void set(int row, int column, double value) {
+		values[offset + (row * rowStride) + column] = value;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void getRow(int row, double[] dest) {
+		System.arraycopy(values, offset + (row * rowStride), dest, 0, columns);
+	}
+	
+}
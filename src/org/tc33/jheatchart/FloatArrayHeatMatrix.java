@@ -0,0 +1,97 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+/**
+ * A {@link HeatMatrix} backed by a 2-dimensional array of <tt>floats</tt>, 
+ * where each element of the array is one row of z-values. The array is used
+ * directly, it is not copied or widened to <tt>doubles</tt>, so a chart of 
+ * single-precision data needs half the memory of the <tt>double[][]</tt> 
+ * equivalent.
+ * 
+ * @since 0.6
+ */
+public class FloatArrayHeatMatrix implements MutableHeatMatrix {
+
+	private final float[][] values;
+	
+	/**
+	 * Constructs a matrix backed by the given array of rows. The number of 
+	 * elements in each inner array must be identical.
+	 * 
+	 * @param values the z-values, where each element is a row of z-values.
+	 */
+	public FloatArrayHeatMatrix(float[][] values) {
+		if (values.length == 0) {
+			throw new IllegalArgumentException("Matrix must have at least one row.");
+		}
+		
+		this.values = values;
+	}
+	
+	/**
+	 * Returns the array of rows that backs this matrix.
+	 * 
+	 * @return the backing array of z-values.
+	 */
+	public float[][] getArray() {
+		return values;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getRowCount() {
+		return values.length;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getColumnCount() {
+		return values[0].length;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public double get(int row, int column) {
+		return values[row][column];
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void set(int row, int column, double value) {
+		values[row][column] = (float) value;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void getRow(int row, double[] dest) {
+		float[] rowValues = values[row];
+		int columns = values[0].length;
+		for (int i=0; i<columns; i++) {
+			dest[i] = rowValues[i];
+		}
+	}
+	
+}
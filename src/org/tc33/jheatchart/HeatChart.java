@@ -21,13 +21,12 @@ package org.tc33.jheatchart;
 
 
 import java.awt.*;
-import java.awt.geom.AffineTransform;
-import java.awt.image.BufferedImage;
+import java.awt.image.*;
 import java.io.*;
-import java.util.Iterator;
-
-import javax.imageio.*;
-import javax.imageio.stream.FileImageOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 /**
  * The <code>HeatChart</code> class describes a chart which can display 
@@ -45,10 +44,14 @@ import javax.imageio.stream.FileImageOutputStream;
  * 
  * <h3>Instantiation</h3>
  * <p>
- * Construction of a new <code>HeatChart</code> instance is through its one
+ * Construction of a new <code>HeatChart</code> instance is through a 
  * constructor which takes a 2-dimensional array of <tt>doubles</tt> which 
  * should contain the z-values for the chart. Consider this array to be 
  * the grid of values which will instead be represented as colours in the chart.
+ * Alternatively the z-values may be given as a 2-dimensional array of 
+ * <tt>floats</tt>, or as a {@link HeatMatrix}, such as a {@link FlatHeatMatrix}
+ * or {@link FlatFloatHeatMatrix} over a single row-major array, which the 
+ * chart will read directly without copying.
  * 
  * <p>
  * Setting of the x-values and y-values which are displayed along the 
@@ -119,11 +122,17 @@ import javax.imageio.stream.FileImageOutputStream;
  * <li><strong>saveToFile(File)</strong> - The chart will be saved to the file 
  * system at the file location specified as a parameter. The image format that  
  * the image will be saved in is derived from the extension of the file name.</li>
+ * <li><strong>saveToStream(OutputStream, String)</strong> - The chart will be 
+ * encoded in the given image format straight into the given stream, such as 
+ * the output stream of a HTTP response. There is also an equivalent 
+ * <code>saveToChannel</code> method for a <code>WritableByteChannel</code>.</li>
  * </ul>
  * 
  * <strong>Note:</strong> The chart image will not actually be created until 
  * either saveToFile(File) or getChartImage() are called, and will be 
- * regenerated on each successive call.
+ * regenerated on each successive call. For charts whose z-values change a 
+ * few cells at a time, getRetainedChartImage(boolean) instead keeps one image
+ * and repaints only the cells changed by updateCell(int, int, double).
  */
 public class HeatChart {
 	
@@ -143,10 +152,19 @@ public class HeatChart {
 	public static final double SCALE_EXPONENTIAL = 3;
 	
 	// x, y, z data values.
-	private double[][] zValues;
+	private HeatMatrix zValues;
 	private Object[] xValues;
 	private Object[] yValues;
 	
+	// The offset and interval that the x-values were set from, or a NaN 
+	// interval if not, and how many columns they have since scrolled along.
+	private double xOffset;
+	private double xInterval;
+	private long xScroll;
+	
+	// Changed whenever the z-values are replaced.
+	private volatile long dataVersion;
+	
 	private boolean xValuesHorizontal;
 	private boolean yValuesHorizontal;
 	
@@ -160,8 +178,6 @@ public class HeatChart {
 	private String title;
 	private Font titleFont;
 	private Color titleColour;
-	private Dimension titleSize;
-	private int titleAscent;
 	
 	// Axis settings.
 	private int axisThickness;
@@ -177,41 +193,53 @@ public class HeatChart {
 	private boolean showXAxisValues;
 	private boolean showYAxisValues;
 	
-	// Generated axis properties.
-	private int xAxisValuesHeight;
-	private int xAxisValuesWidthMax;
-	
-	private int yAxisValuesHeight;
-	private int yAxisValuesAscent;
-	private int yAxisValuesWidthMax;
-	
-	private Dimension xAxisLabelSize;
-	private int xAxisLabelDescent;
-	
-	private Dimension yAxisLabelSize;
-	private int yAxisLabelAscent;
-	
 	// Heat map colour settings.
 	private Color highValueColour;
 	private Color lowValueColour;
 	
-	// How many RGB steps there are between the high and low colours.
-	private int colourValueDistance;
-	
 	private double lowValue;
 	private double highValue;
 	
-	// Key co-ordinate positions.
-	private Point heatMapTL;
-	private Point heatMapBR;
-	private Point heatMapC;
-	
-	// Heat map dimensions.
-	private Dimension heatMapSize;
-	
 	// Control variable for mapping z-values to colours.
 	private double colourScale;
 	
+	// Mapping from z-values to colours, rebuilt when the above change.
+	private ColourMap colourMap;
+	
+	// Executor used to render bands of the heat map, or null for serial.
+	private ExecutorService renderExecutor;
+	
+	// Told how long each phase of generating a chart takes, or null for none.
+	private RenderListener renderListener;
+	
+	// Largest size of heat map before cells are aggregated, or null for no limit.
+	private Dimension maxHeatMapSize;
+	private Aggregation downsampleAggregation;
+	
+	// Whether charts are generated as palette images.
+	private boolean indexedColour;
+	
+	// Measurements of the last generated chart, reused until settings change.
+	private ChartLayout layout;
+	
+	// The chart image kept by getRetainedChartImage and what it was drawn from.
+	private BufferedImage retainedImage;
+	private boolean retainedAlpha;
+	private HeatChartSpec retainedSpec;
+	private ChartLayout retainedLayout;
+	private ChartData retainedChart;
+	private byte[] retainedPaletteIndices;
+	
+	// Cells updated since the retained image was drawn, as packed row and column.
+	private long[] dirtyCells;
+	private int noDirtyCells;
+	
+	// Columns appended since the retained image was drawn, up to all of them.
+	private int pendingScroll;
+	
+	// Scratch graphics used only for its font metrics when scrolling.
+	private Graphics2D measureGraphics;
+	
 	/**
 	 * Constructs a heatmap for the given z-values against x/y-values that by 
 	 * default will be the values 0 to n-1, where n is the number of columns or 
@@ -221,7 +249,7 @@ public class HeatChart {
 	 * in the resultant heat chart.
 	 */
 	public HeatChart(double[][] zValues) {
-		this(zValues, min(zValues), max(zValues));
+		this(new ArrayHeatMatrix(zValues), ValueRange.scan(zValues));
 	}
 	
 	/**
@@ -237,6 +265,76 @@ public class HeatChart {
 	 * the z-values.
 	 */
 	public HeatChart(double[][] zValues, double low, double high) {
+		this(new ArrayHeatMatrix(zValues), low, high);
+	}
+	
+	/**
+	 * Constructs a heatmap for the given single-precision z-values against 
+	 * x/y-values that by default will be the values 0 to n-1, where n is the 
+	 * number of columns or rows. The array is used directly, without being 
+	 * copied or widened to <tt>doubles</tt>.
+	 * 
+	 * @param zValues the z-values, where each element is a row of z-values
+	 * in the resultant heat chart.
+	 * @since 0.6
+	 */
+	public HeatChart(float[][] zValues) {
+		this(new FloatArrayHeatMatrix(zValues));
+	}
+	
+	/**
+	 * Constructs a heatmap for the given single-precision z-values against 
+	 * x/y-values that by default will be the values 0 to n-1, where n is the 
+	 * number of columns or rows. The array is used directly, without being 
+	 * copied or widened to <tt>doubles</tt>.
+	 * 
+	 * @param zValues the z-values, where each element is a row of z-values
+	 * in the resultant heat chart.
+	 * @param low the minimum possible value, which may or may not appear in the
+	 * z-values.
+	 * @param high the maximum possible value, which may or may not appear in 
+	 * the z-values.
+	 * @since 0.6
+	 */
+	public HeatChart(float[][] zValues, double low, double high) {
+		this(new FloatArrayHeatMatrix(zValues), low, high);
+	}
+	
+	/**
+	 * Constructs a heatmap for the given matrix of z-values against 
+	 * x/y-values that by default will be the values 0 to n-1, where n is the
+	 * number of columns or rows.
+	 * 
+	 * @param zValues the z-values, where each row of the matrix is a row of 
+	 * z-values in the resultant heat chart.
+	 * @since 0.6
+	 */
+	public HeatChart(HeatMatrix zValues) {
+		this(zValues, ValueRange.scan(zValues));
+	}
+	
+	/*
+	 * Constructs a heatmap using the bounds of the given range as the low and
+	 * high values.
+	 */
+	private HeatChart(HeatMatrix zValues, ValueRange range) {
+		this(zValues, range.getMin(), range.getMax());
+	}
+	
+	/**
+	 * Constructs a heatmap for the given matrix of z-values against 
+	 * x/y-values that by default will be the values 0 to n-1, where n is the
+	 * number of columns or rows.
+	 * 
+	 * @param zValues the z-values, where each row of the matrix is a row of 
+	 * z-values in the resultant heat chart.
+	 * @param low the minimum possible value, which may or may not appear in the
+	 * z-values.
+	 * @param high the maximum possible value, which may or may not appear in 
+	 * the z-values.
+	 * @since 0.6
+	 */
+	public HeatChart(HeatMatrix zValues, double low, double high) {
 		this.zValues = zValues;
 		this.lowValue = low;
 		this.highValue = high;
@@ -265,20 +363,20 @@ public class HeatChart {
 		this.axisValuesColour = Color.BLACK;
 		this.axisValuesFont = new Font("Sans-Serif", Font.PLAIN, 10);
 		this.xAxisValuesFrequency = 1;
-		this.xAxisValuesHeight = 0;
 		this.xValuesHorizontal = false;
 		this.showXAxisValues = true;
 		this.showYAxisValues = true;
 		this.yAxisValuesFrequency = 1;
-		this.yAxisValuesHeight = 0;
 		this.yValuesHorizontal = true;
 		
 		// Default heatmap settings.
 		this.highValueColour = Color.BLACK;
 		this.lowValueColour = Color.WHITE;
 		this.colourScale = SCALE_LINEAR;
+		this.maxHeatMapSize = null;
+		this.downsampleAggregation = Aggregation.MEAN;
 		
-		updateColourDistance();
+		updateColourMap();
 	}
 	
 	/**
@@ -306,23 +404,49 @@ public class HeatChart {
 	 * element is a double array which represents one row of the heat map, or  
 	 * all the z-values for one y-value.
 	 * 
+	 * <p>
+	 * If the z-values were set as a <code>HeatMatrix</code> other than an 
+	 * <code>ArrayHeatMatrix</code> then a new array is created and filled with 
+	 * a copy of the matrix values. Use <code>getZMatrix()</code> to avoid 
+	 * the copy.
+	 * 
 	 * @return an array of the z-values in current use, that is, those values 
 	 * which will define the colour of each cell in the resultant heat map.
 	 */
 	public double[][] getZValues() {
+		if (zValues instanceof ArrayHeatMatrix) {
+			return ((ArrayHeatMatrix) zValues).getArray();
+		}
+		
+		double[][] values = new double[zValues.getRowCount()][zValues.getColumnCount()];
+		for (int i=0; i<values.length; i++) {
+			zValues.getRow(i, values[i]);
+		}
+		return values;
+	}
+	
+	/**
+	 * Returns the matrix of z-values currently in use. Each row of the matrix
+	 * is one row of the heat map, or all the z-values for one y-value.
+	 * 
+	 * @return the matrix of z-values in current use, that is, those values 
+	 * which will define the colour of each cell in the resultant heat map.
+	 * @since 0.6
+	 */
+	public HeatMatrix getZMatrix() {
 		return zValues;
 	}
 	
 	/**
 	 * Replaces the z-values array. See the 
 	 * {@link #setZValues(double[][], double, double)} method for an example of 
-	 * z-values. The smallest and largest values in the array are used as the 
-	 * minimum and maximum values respectively.
+	 * z-values. The smallest and largest finite values in the array are used 
+	 * as the minimum and maximum values respectively.
 	 * @param zValues the array to replace the current array with. The number 
 	 * of elements in each inner array must be identical.
 	 */
 	public void setZValues(double[][] zValues) {
-		setZValues(zValues, min(zValues), max(zValues));
+		setZValues(new ArrayHeatMatrix(zValues));
 	}
 	
 	/**
@@ -381,9 +505,252 @@ public class HeatChart {
 	 * the z-values.
 	 */
 	public void setZValues(double[][] zValues, double low, double high) {
+		setZValues(new ArrayHeatMatrix(zValues), low, high);
+	}
+	
+	/**
+	 * Replaces the z-values with the given single-precision array. The 
+	 * smallest and largest values in the array are used as the minimum and 
+	 * maximum values respectively. The array is used directly, without being 
+	 * copied or widened to <tt>doubles</tt>.
+	 * 
+	 * @param zValues the array to replace the current z-values with. The 
+	 * number of elements in each inner array must be identical.
+	 * @since 0.6
+	 */
+	public void setZValues(float[][] zValues) {
+		setZValues(new FloatArrayHeatMatrix(zValues));
+	}
+	
+	/**
+	 * Replaces the z-values with the given single-precision array. See the 
+	 * {@link #setZValues(double[][], double, double)} method for an example of
+	 * z-values. The array is used directly, without being copied or widened to
+	 * <tt>doubles</tt>.
+	 * 
+	 * @param zValues the array to replace the current z-values with. The 
+	 * number of elements in each inner array must be identical.
+	 * @param low the minimum possible value, which may or may not appear in the
+	 * z-values.
+	 * @param high the maximum possible value, which may or may not appear in 
+	 * the z-values.
+	 * @since 0.6
+	 */
+	public void setZValues(float[][] zValues, double low, double high) {
+		setZValues(new FloatArrayHeatMatrix(zValues), low, high);
+	}
+	
+	/**
+	 * Replaces the z-values with the given matrix. The smallest and largest 
+	 * values in the matrix are used as the minimum and maximum values 
+	 * respectively. These are found in a single pass over the matrix, in 
+	 * parallel if a render executor has been set.
+	 * 
+	 * @param zValues the matrix to replace the current z-values with.
+	 * @since 0.6
+	 */
+	public void setZValues(HeatMatrix zValues) {
+		ValueRange range = ValueRange.scan(zValues, renderExecutor);
+		setZValues(zValues, range.getMin(), range.getMax());
+	}
+	
+	/**
+	 * Replaces the z-values with the given matrix. The number of rows should 
+	 * match the number of y-values and the number of columns should match the
+	 * number of x-values. Use this method where the minimum and maximum values
+	 * possible are not contained within the dataset.
+	 * 
+	 * @param zValues the matrix to replace the current z-values with.
+	 * @param low the minimum possible value, which may or may not appear in the
+	 * z-values.
+	 * @param high the maximum possible value, which may or may not appear in 
+	 * the z-values.
+	 * @since 0.6
+	 */
+	public void setZValues(HeatMatrix zValues, double low, double high) {
 		this.zValues = zValues;
 		this.lowValue = low;
 		this.highValue = high;
+		
+		dataVersion++;
+		invalidateImage();
+	}
+	
+	/**
+	 * Returns the version of the z-values, a number which changes every time 
+	 * the z-values are replaced or updated with <code>updateCell</code>. It 
+	 * can be used to tell whether anything rendered from the z-values, such as
+	 * a cached tile, is out of date. Changes made directly to an array or 
+	 * matrix that the chart holds do not change the version.
+	 * 
+	 * @return the current version of the z-values.
+	 * @since 0.6
+	 */
+	public long getDataVersion() {
+		return dataVersion;
+	}
+	
+	/**
+	 * Changes the z-value of a single cell of the heat map. The z-values must
+	 * be held in a {@link MutableHeatMatrix}, as they are when given as a 
+	 * <tt>double[][]</tt> or <tt>float[][]</tt> array, which is updated in 
+	 * place.
+	 * 
+	 * <p>
+	 * If a chart image is being retained by 
+	 * <code>getRetainedChartImage(boolean)</code> then only this cell of it is
+	 * repainted on the next call to that method, rather than the whole chart 
+	 * being generated again. The minimum and maximum values are not changed, 
+	 * so a z-value outside of them is given the low or high value colour.
+	 * 
+	 * @param row the index of the row of the cell.
+	 * @param column the index of the column of the cell.
+	 * @param value the new z-value of the cell.
+	 * @throws UnsupportedOperationException if the z-values are not held in a
+	 * <code>MutableHeatMatrix</code>.
+	 * @since 0.6
+	 */
+	public void updateCell(int row, int column, double value) {
+		getMutableZValues().set(row, column, value);
+		
+		dataVersion++;
+		markDirty(row, column);
+	}
+	
+	/**
+	 * Changes the z-values of a batch of cells of the heat map. The cell at 
+	 * <code>rows[i]</code>, <code>columns[i]</code> is given the z-value 
+	 * <code>values[i]</code>, in the same way as by 
+	 * <code>updateCell(int, int, double)</code>.
+	 * 
+	 * @param rows the index of the row of each cell.
+	 * @param columns the index of the column of each cell.
+	 * @param values the new z-value of each cell.
+	 * @throws UnsupportedOperationException if the z-values are not held in a
+	 * <code>MutableHeatMatrix</code>.
+	 * @since 0.6
+	 */
+	public void updateCells(int[] rows, int[] columns, double[] values) {
+		if (rows.length != columns.length || rows.length != values.length) {
+			throw new IllegalArgumentException("Rows, columns and values must be the same length.");
+		}
+		
+		MutableHeatMatrix matrix = getMutableZValues();
+		for (int i=0; i<values.length; i++) {
+			matrix.set(rows[i], columns[i], values[i]);
+		}
+		
+		dataVersion++;
+		for (int i=0; i<values.length; i++) {
+			markDirty(rows[i], columns[i]);
+		}
+	}
+	
+	/**
+	 * Appends a column of z-values to the end of the heat map, discarding the
+	 * first column, for a chart of a rolling window of values over time. The 
+	 * z-values must be held in a {@link RingHeatMatrix}, so only the new 
+	 * column's z-values are written. The x-values must have been set with 
+	 * <code>setXValues(double, double)</code>, or left as the default, and 
+	 * they advance by one interval, so that the new column has the next value.
+	 * 
+	 * <p>
+	 * If a chart image is being retained by 
+	 * <code>getRetainedChartImage(boolean)</code> then on the next call to 
+	 * that method the pixels of the heat map are scrolled along, and only the 
+	 * new columns and the x-axis values are drawn. As for 
+	 * <code>updateCell</code>, the minimum and maximum values are not changed.
+	 * 
+	 * @param column the z-values of the new column, one for each row.
+	 * @throws UnsupportedOperationException if the z-values are not held in a
+	 * <code>RingHeatMatrix</code>.
+	 * @throws IllegalStateException if the x-values were not set from an 
+	 * offset and interval.
+	 * @since 0.6
+	 */
+	public void appendColumn(double[] column) {
+		RingHeatMatrix matrix = getRingZValues();
+		if (Double.isNaN(xInterval)) {
+			throw new IllegalStateException("X-values were not set by offset and interval, the new x-value must be given.");
+		}
+		
+		matrix.appendColumn(column);
+		xScroll++;
+		scrollColumns(xOffset + ((xScroll + xValues.length - 1) * xInterval));
+	}
+	
+	/**
+	 * Appends a column of z-values to the end of the heat map, discarding the
+	 * first column, in the same way as <code>appendColumn(double[])</code>, 
+	 * but with the given x-value for the new column. The other x-values move
+	 * one column towards the first.
+	 * 
+	 * @param column the z-values of the new column, one for each row.
+	 * @param xValue the x-value of the new column.
+	 * @throws UnsupportedOperationException if the z-values are not held in a
+	 * <code>RingHeatMatrix</code>.
+	 * @since 0.6
+	 */
+	public void appendColumn(double[] column, Object xValue) {
+		getRingZValues().appendColumn(column);
+		xInterval = Double.NaN;
+		scrollColumns(xValue);
+	}
+	
+	/*
+	 * Returns the z-values as a ring buffer of columns, or throws an 
+	 * exception if they are not one.
+	 */
+	private RingHeatMatrix getRingZValues() {
+		if (!(zValues instanceof RingHeatMatrix)) {
+			throw new UnsupportedOperationException("Columns cannot be appended to z-values: " + zValues.getClass().getName());
+		}
+		return (RingHeatMatrix) zValues;
+	}
+	
+	/*
+	 * Moves the x-values along by one column after a column has been 
+	 * appended, keeping the layout and retained image where they can be 
+	 * scrolled rather than measured or drawn again. A downsampled heat map 
+	 * cannot be scrolled, as its blocks of cells change, so a retained image
+	 * of one is drawn again in full.
+	 */
+	private void scrollColumns(Object xValue) {
+		dataVersion++;
+		
+		int last = xValues.length - 1;
+		System.arraycopy(xValues, 1, xValues, 0, last);
+		xValues[last] = xValue;
+		
+		if (layout != null) {
+			if (measureGraphics == null) {
+				measureGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+			}
+			if (layout.columns != zValues.getColumnCount() 
+					|| !layout.scrollXValues(xValue, measureGraphics.getFontMetrics(axisValuesFont))) {
+				invalidateLayout();
+				return;
+			}
+		}
+		
+		if (retainedImage != null) {
+			if (retainedLayout != layout || retainedChart.rowBlock > 1 || retainedChart.columnBlock > 1) {
+				invalidateImage();
+			} else if (pendingScroll < layout.columns) {
+				pendingScroll++;
+			}
+		}
+	}
+	
+	/*
+	 * Returns the z-values as a matrix that can be updated, or throws an 
+	 * exception if they cannot be.
+	 */
+	private MutableHeatMatrix getMutableZValues() {
+		if (!(zValues instanceof MutableHeatMatrix)) {
+			throw new UnsupportedOperationException("Z-values cannot be updated: " + zValues.getClass().getName());
+		}
+		return (MutableHeatMatrix) zValues;
 	}
 	
 	/**
@@ -406,10 +773,15 @@ public class HeatChart {
 	 */
 	public void setXValues(double xOffset, double xInterval) {		
 		// Update the x-values according to the offset and interval.
-		xValues = new Object[zValues[0].length];
-		for (int i=0; i<zValues[0].length; i++) {
+		xValues = new Object[zValues.getColumnCount()];
+		for (int i=0; i<xValues.length; i++) {
 			xValues[i] = xOffset + (i * xInterval);
 		}
+		this.xOffset = xOffset;
+		this.xInterval = xInterval;
+		this.xScroll = 0;
+		
+		invalidateLayout();
 	}
 	
 	/**
@@ -423,6 +795,9 @@ public class HeatChart {
 	 */
 	public void setXValues(Object[] xValues) {
 		this.xValues = xValues;
+		this.xInterval = Double.NaN;
+		
+		invalidateLayout();
 	}
 	
 	/**
@@ -445,10 +820,12 @@ public class HeatChart {
 	 */
 	public void setYValues(double yOffset, double yInterval) {
 		// Update the y-values according to the offset and interval.
-		yValues = new Object[zValues.length];
-		for (int i=0; i<zValues.length; i++) {
+		yValues = new Object[zValues.getRowCount()];
+		for (int i=0; i<yValues.length; i++) {
 			yValues[i] = yOffset + (i * yInterval);
 		}
+		
+		invalidateLayout();
 	}
 	
 	/**
@@ -462,6 +839,8 @@ public class HeatChart {
 	 */
 	public void setYValues(Object[] yValues) {
 		this.yValues = yValues;
+		
+		invalidateLayout();
 	}
 	
 	/**
@@ -499,6 +878,8 @@ public class HeatChart {
 	 */
 	public void setXValuesHorizontal(boolean xValuesHorizontal) {
 		this.xValuesHorizontal = xValuesHorizontal;
+		
+		invalidateLayout();
 	}
 	
 	/**
@@ -521,6 +902,8 @@ public class HeatChart {
 	 */
 	public void setYValuesHorizontal(boolean yValuesHorizontal) {
 		this.yValuesHorizontal = yValuesHorizontal;
+		
+		invalidateLayout();
 	}
 	
 	/**
@@ -597,6 +980,8 @@ public class HeatChart {
 	 */
 	public void setCellSize(Dimension cellSize) {
 		this.cellSize = cellSize;
+		
+		invalidateLayout();
 	}
 	
 	/**
@@ -670,6 +1055,8 @@ public class HeatChart {
 	 */
 	public void setTitle(String title) {
 		this.title = title;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -698,6 +1085,8 @@ public class HeatChart {
 	 */
 	public void setXAxisLabel(String xAxisLabel) {
 		this.xAxisLabel = xAxisLabel;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -726,6 +1115,8 @@ public class HeatChart {
 	 */
 	public void setYAxisLabel(String yAxisLabel) {
 		this.yAxisLabel = yAxisLabel;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -753,6 +1144,8 @@ public class HeatChart {
 	 */
 	public void setChartMargin(int margin) {
 		this.margin = margin;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -782,6 +1175,8 @@ public class HeatChart {
 		}
 		
 		this.backgroundColour = backgroundColour;
+		
+		invalidateImage();
 	}
 
 	/**
@@ -806,6 +1201,8 @@ public class HeatChart {
 	 */
 	public void setTitleFont(Font titleFont) {
 		this.titleFont = titleFont;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -829,6 +1226,8 @@ public class HeatChart {
 	 */
 	public void setTitleColour(Color titleColour) {
 		this.titleColour = titleColour;
+		
+		invalidateImage();
 	}
 
 	/**
@@ -853,6 +1252,8 @@ public class HeatChart {
 	 */
 	public void setAxisThickness(int axisThickness) {
 		this.axisThickness = axisThickness;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -876,6 +1277,8 @@ public class HeatChart {
 	 */
 	public void setAxisColour(Color axisColour) {
 		this.axisColour = axisColour;
+		
+		invalidateImage();
 	}
 
 	/**
@@ -900,6 +1303,8 @@ public class HeatChart {
 	 */
 	public void setAxisLabelsFont(Font axisLabelsFont) {
 		this.axisLabelsFont = axisLabelsFont;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -923,6 +1328,8 @@ public class HeatChart {
 	 */
 	public void setAxisLabelColour(Color axisLabelColour) {
 		this.axisLabelColour = axisLabelColour;
+		
+		invalidateImage();
 	}
 
 	/**
@@ -948,6 +1355,8 @@ public class HeatChart {
 	 */
 	public void setAxisValuesFont(Font axisValuesFont) {
 		this.axisValuesFont = axisValuesFont;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -971,6 +1380,8 @@ public class HeatChart {
 	 */
 	public void setAxisValuesColour(Color axisValuesColour) {
 		this.axisValuesColour = axisValuesColour;
+		
+		invalidateImage();
 	}
 	
 	/**
@@ -1000,6 +1411,8 @@ public class HeatChart {
 	 */
 	public void setXAxisValuesFrequency(int axisValuesFrequency) {
 		this.xAxisValuesFrequency = axisValuesFrequency;
+		
+		invalidateImage();
 	}
 
 	/**
@@ -1028,6 +1441,8 @@ public class HeatChart {
 	 */
 	public void setYAxisValuesFrequency(int axisValuesFrequency) {
 		yAxisValuesFrequency = axisValuesFrequency; 
+		
+		invalidateImage();
 	}
 
 	/**
@@ -1059,6 +1474,8 @@ public class HeatChart {
 	 */
 	public void setShowXAxisValues(boolean showXAxisValues) {
 		this.showXAxisValues = showXAxisValues;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -1089,6 +1506,8 @@ public class HeatChart {
 	 */
 	public void setShowYAxisValues(boolean showYAxisValues) {
 		this.showYAxisValues = showYAxisValues;
+		
+		invalidateLayout();
 	}
 
 	/**
@@ -1122,7 +1541,8 @@ public class HeatChart {
 	public void setHighValueColour(Color highValueColour) {
 		this.highValueColour = highValueColour;
 		
-		updateColourDistance();
+		updateColourMap();
+		invalidateImage();
 	}
 	
 	/**
@@ -1156,7 +1576,8 @@ public class HeatChart {
 	public void setLowValueColour(Color lowValueColour) {
 		this.lowValueColour = lowValueColour;
 		
-		updateColourDistance();
+		updateColourMap();
+		invalidateImage();
 	}
 	
 	/**
@@ -1193,25 +1614,195 @@ public class HeatChart {
 	 */
 	public void setColourScale(double colourScale) {
 		this.colourScale = colourScale;
+		
+		updateColourMap();
+		invalidateImage();
+	}
+	
+	/**
+	 * Returns the executor that is used to render the heat map in parallel, or
+	 * <tt>null</tt> if the heat map is rendered on the calling thread.
+	 * 
+	 * @return the executor used for parallel rendering of the heat map.
+	 * @since 0.6
+	 */
+	public ExecutorService getRenderExecutor() {
+		return renderExecutor;
+	}
+	
+	/**
+	 * Sets an executor to be used to render the heat map in parallel. When 
+	 * set, the heat map of a large chart is split into horizontal bands of 
+	 * cell rows which are rendered as separate tasks on the executor, each 
+	 * writing only its own rows of the chart image. All bands are complete 
+	 * before the axis and labels are drawn. The executor is not shut down by
+	 * the chart.
+	 * 
+	 * <p>
+	 * Defaults to null, the heat map is rendered on the calling thread.
+	 * 
+	 * @param renderExecutor the executor to render heat map bands on, or 
+	 * <tt>null</tt> to render on the calling thread.
+	 * @since 0.6
+	 */
+	public void setRenderExecutor(ExecutorService renderExecutor) {
+		this.renderExecutor = renderExecutor;
+	}
+	
+	/**
+	 * Returns the listener that is told how long each phase of generating a 
+	 * chart takes, or <tt>null</tt> if there is none.
+	 * 
+	 * @return the render listener, or <tt>null</tt>.
+	 * @since 0.6
+	 */
+	public RenderListener getRenderListener() {
+		return renderListener;
+	}
+	
+	/**
+	 * Sets a listener to be told how long each phase of generating a chart 
+	 * takes, such as measuring the layout, drawing the heat map and encoding
+	 * the image, along with the number of cells, pixels and bytes involved.
+	 * 
+	 * <p>
+	 * Independently of any listener, charts also emit flight recorder events 
+	 * named <code>org.tc33.jheatchart.ChartRender</code>, 
+	 * <code>org.tc33.jheatchart.HeatMapRaster</code> and 
+	 * <code>org.tc33.jheatchart.ChartEncode</code>, which are recorded only 
+	 * when enabled in a running recording.
+	 * 
+	 * <p>
+	 * Defaults to null, in which case no timings are taken.
+	 * 
+	 * @param renderListener the listener to report each phase to, or 
+	 * <tt>null</tt> for none.
+	 * @since 0.6
+	 */
+	public void setRenderListener(RenderListener renderListener) {
+		this.renderListener = renderListener;
+	}
+	
+	/**
+	 * Returns the largest size in pixels that the heat map may be drawn at, or
+	 * <tt>null</tt> if there is no limit.
+	 * 
+	 * @return the maximum size of the heat map.
+	 * @since 0.6
+	 */
+	public Dimension getMaxHeatMapSize() {
+		return maxHeatMapSize;
+	}
+	
+	/**
+	 * Sets the largest size in pixels that the heat map may be drawn at. Where
+	 * the z-values have too many columns or rows for the heat map to fit in 
+	 * this size at the current cell size, blocks of neighbouring cells are 
+	 * aggregated into single cells, using the aggregation set with 
+	 * <code>setDownsampleAggregation(Aggregation)</code>, until it does fit. 
+	 * The axis values shown are those of the first column or row of each 
+	 * block.
+	 * 
+	 * <p>
+	 * The z-values are aggregated in a single pass on each generation of the 
+	 * chart, and only the aggregated cells are held in memory, so the cost of
+	 * drawing the chart depends on this size rather than on the number of 
+	 * z-values.
+	 * 
+	 * <p>
+	 * Defaults to null, the heat map is drawn with every cell at full size.
+	 * 
+	 * @param maxHeatMapSize the maximum size of the heat map in pixels, or 
+	 * <tt>null</tt> for no limit.
+	 * @since 0.6
+	 */
+	public void setMaxHeatMapSize(Dimension maxHeatMapSize) {
+		this.maxHeatMapSize = maxHeatMapSize;
+		
+		invalidateLayout();
+	}
+	
+	/**
+	 * Returns the aggregation used to combine blocks of cells when the heat 
+	 * map is larger than the maximum heat map size.
+	 * 
+	 * @return the aggregation used to downsample the z-values.
+	 * @since 0.6
+	 */
+	public Aggregation getDownsampleAggregation() {
+		return downsampleAggregation;
+	}
+	
+	/**
+	 * Sets the aggregation used to combine blocks of cells when the heat map 
+	 * is larger than the maximum heat map size. When <code>SUM</code> is used
+	 * the low and high values are multiplied by the number of cells in a 
+	 * block, so that the full range of colours remains in use.
+	 * 
+	 * <p>
+	 * Defaults to <code>Aggregation.MEAN</code>.
+	 * 
+	 * @param downsampleAggregation the aggregation to downsample z-values with.
+	 * @since 0.6
+	 */
+	public void setDownsampleAggregation(Aggregation downsampleAggregation) {
+		this.downsampleAggregation = downsampleAggregation;
+		
+		invalidateImage();
+	}
+	
+	/**
+	 * Returns whether charts are generated as indexed colour images.
+	 * 
+	 * @return true if charts are generated with a colour palette.
+	 * @since 0.6
+	 */
+	public boolean isIndexedColour() {
+		return indexedColour;
+	}
+	
+	/**
+	 * Sets whether charts are generated as indexed colour images. When set, 
+	 * generated charts are <code>TYPE_BYTE_INDEXED</code> images with a 
+	 * palette of the background, title, axis and axis label and value 
+	 * colours followed by the steps from the low value colour to the high 
+	 * value colour. Each pixel takes one byte rather than four, and formats 
+	 * such as PNG and GIF save the chart with its palette, giving much 
+	 * smaller files.
+	 * 
+	 * <p>
+	 * Palettes hold at most 256 colours, so where there are more steps 
+	 * between the low and high value colours than fit, evenly spaced steps 
+	 * are used and cells take the nearest of them. Text and lines are drawn 
+	 * using the nearest colour in the palette, so their edges are not 
+	 * smoothed.
+	 * 
+	 * <p>
+	 * Defaults to false, charts are generated as RGB images.
+	 * 
+	 * @param indexedColour whether to generate charts with a colour palette.
+	 * @since 0.6
+	 */
+	public void setIndexedColour(boolean indexedColour) {
+		this.indexedColour = indexedColour;
+		
+		invalidateImage();
 	}
 
 	/*
-	 * Calculate and update the field for the distance between the low colour 
-	 * and high colour. The distance is the number of steps between one colour 
-	 * and the other using an RGB coding with 0-255 values for each of red, 
-	 * green and blue. So the maximum colour distance is 255 + 255 + 255.
-	 */
-	private void updateColourDistance() {
-		int r1 = lowValueColour.getRed();
-		int g1 = lowValueColour.getGreen();
-		int b1 = lowValueColour.getBlue();
-		int r2 = highValueColour.getRed();
-		int g2 = highValueColour.getGreen();
-		int b2 = highValueColour.getBlue();
-		
-		colourValueDistance = Math.abs(r1 - r2);
-		colourValueDistance += Math.abs(g1 - g2);
-		colourValueDistance += Math.abs(b1 - b2);
+	 * Rebuilds the mapping from z-values to colours. Must be called whenever 
+	 * the high or low value colour or the colour scale is changed.
+	 */
+	private void updateColourMap() {
+		colourMap = new ColourMap(lowValueColour, highValueColour, colourScale);
+	}
+	
+	/*
+	 * Returns the current mapping from z-values to colours, which being 
+	 * immutable may be shared.
+	 */
+	ColourMap getColourMap() {
+		return colourMap;
 	}
 
 	/**
@@ -1223,7 +1814,8 @@ public class HeatChart {
 	 * 
 	 * <p>
 	 * All supported <code>ImageIO</code> file types are supported, including 
-	 * PNG, JPG and GIF.
+	 * PNG, JPG and GIF. JPG images are encoded with a quality of 1.0, all 
+	 * other formats use their default settings.
 	 * 
 	 * <p>
 	 * No chart will be generated until this or the related 
@@ -1251,34 +1843,170 @@ public class HeatChart {
 		// Determine the extension of the filename.
 		String ext = filename.substring(extPoint + 1);
 		
-		// Handle jpg without transparency.
-		if (ext.toLowerCase().equals("jpg") || ext.toLowerCase().equals("jpeg")) {
-			BufferedImage chart = (BufferedImage) getChartImage(false);
-
-			// Save our graphic.
-			saveGraphicJpeg(chart, outputFile, 1.0f);
-		} else {
-			BufferedImage chart = (BufferedImage) getChartImage(true);
-			
-			ImageIO.write(chart, ext, outputFile);
+		saveToFile(outputFile, getEncoder(ext));
+	}
+	
+	/**
+	 * Generates a new chart <code>Image</code> based upon the currently held 
+	 * settings and saves it to disk at the given location, encoded with the 
+	 * given encoder. The chart is generated with transparency only if the
+	 * encoder supports it. The file is always closed, even if encoding fails.
+	 * 
+	 * @param outputFile the file location that the generated image file should 
+	 * be written to.
+	 * @param encoder the encoder to encode the image with.
+	 * @throws IOException if the image cannot be encoded or the file is unable
+	 * to be written to.
+	 * @since 0.6
+	 */
+	public void saveToFile(File outputFile, ChartEncoder encoder) throws IOException {
+		BufferedImage chart = (BufferedImage) getChartImage(encoder.isAlphaSupported());
+		
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+		try {
+			getRenderer().encodeChart(chart, encoder, out);
+		} finally {
+			out.close();
 		}
 	}
 	
-	private void saveGraphicJpeg(BufferedImage chart, File outputFile, float quality) throws IOException {
-		// Setup correct compression for jpeg.
-		Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName("jpeg");
-		ImageWriter writer = (ImageWriter) iter.next();
-		ImageWriteParam iwp = writer.getDefaultWriteParam();
-		iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-		iwp.setCompressionQuality(quality);
+	/**
+	 * Generates a new chart <code>Image</code> based upon the currently held 
+	 * settings and encodes it in the given image format straight into the 
+	 * given stream. The image is encoded in memory as it is written, nothing 
+	 * is written to the file system. The stream is flushed but not closed.
+	 * 
+	 * <p>
+	 * All <code>ImageIO</code> formats are supported, including PNG, JPG and 
+	 * GIF. JPG images are generated without transparency and encoded with a 
+	 * quality of 1.0, all other formats use their default settings.
+	 * 
+	 * @param out the stream to write the encoded image to.
+	 * @param format the informal name of the image format, such as 
+	 * <tt>"png"</tt> or <tt>"jpg"</tt>.
+	 * @throws IOException if there is no writer for the format or the stream
+	 * cannot be written to.
+	 * @since 0.6
+	 */
+	public void saveToStream(OutputStream out, String format) throws IOException {
+		saveToStream(out, getEncoder(format));
+	}
+	
+	/**
+	 * Generates a new chart <code>Image</code> based upon the currently held 
+	 * settings and encodes it in the given image format, with the given 
+	 * compression quality, straight into the given stream. The image is 
+	 * encoded in memory as it is written, nothing is written to the file 
+	 * system. The stream is flushed but not closed.
+	 * 
+	 * <p>
+	 * The quality is a value from 0.0 to 1.0, with the meaning defined by the
+	 * format's writer. For JPG it trades file size for image quality, while 
+	 * for the lossless PNG format it trades file size for encoding speed. It 
+	 * is ignored by formats that do not support compression settings.
+	 * 
+	 * @param out the stream to write the encoded image to.
+	 * @param format the informal name of the image format, such as 
+	 * <tt>"png"</tt> or <tt>"jpg"</tt>.
+	 * @param quality the compression quality from 0.0 to 1.0.
+	 * @throws IOException if there is no writer for the format or the stream
+	 * cannot be written to.
+	 * @since 0.6
+	 */
+	public void saveToStream(OutputStream out, String format, float quality) throws IOException {
+		saveToStream(out, getEncoder(format, quality));
+	}
+	
+	/**
+	 * Generates a new chart <code>Image</code> based upon the currently held 
+	 * settings and encodes it with the given encoder straight into the given 
+	 * stream. The chart is generated with transparency only if the encoder 
+	 * supports it. The stream is not closed.
+	 * 
+	 * @param out the stream to write the encoded image to.
+	 * @param encoder the encoder to encode the image with.
+	 * @throws IOException if the image cannot be encoded or the stream cannot
+	 * be written to.
+	 * @since 0.6
+	 */
+	public void saveToStream(OutputStream out, ChartEncoder encoder) throws IOException {
+		BufferedImage chart = (BufferedImage) getChartImage(encoder.isAlphaSupported());
 		
-		// Output the image.
-		FileImageOutputStream output = new FileImageOutputStream(outputFile);
-		writer.setOutput(output);
-		IIOImage image = new IIOImage(chart, null, null);
-		writer.write(null, image, iwp);
-		writer.dispose();
+		getRenderer().encodeChart(chart, encoder, out);
+	}
+	
+	/**
+	 * Generates a new chart <code>Image</code> based upon the currently held 
+	 * settings and encodes it in the given image format straight into the 
+	 * given channel. The channel is not closed. See 
+	 * {@link #saveToStream(OutputStream, String)} for details.
+	 * 
+	 * @param channel the channel to write the encoded image to.
+	 * @param format the informal name of the image format, such as 
+	 * <tt>"png"</tt> or <tt>"jpg"</tt>.
+	 * @throws IOException if there is no writer for the format or the channel
+	 * cannot be written to.
+	 * @since 0.6
+	 */
+	public void saveToChannel(WritableByteChannel channel, String format) throws IOException {
+		saveToStream(Channels.newOutputStream(channel), format);
+	}
+	
+	/**
+	 * Generates a new chart <code>Image</code> based upon the currently held 
+	 * settings and encodes it in the given image format, with the given 
+	 * compression quality, straight into the given channel. The channel is not
+	 * closed. See {@link #saveToStream(OutputStream, String, float)} for 
+	 * details.
+	 * 
+	 * @param channel the channel to write the encoded image to.
+	 * @param format the informal name of the image format, such as 
+	 * <tt>"png"</tt> or <tt>"jpg"</tt>.
+	 * @param quality the compression quality from 0.0 to 1.0.
+	 * @throws IOException if there is no writer for the format or the channel
+	 * cannot be written to.
+	 * @since 0.6
+	 */
+	public void saveToChannel(WritableByteChannel channel, String format, float quality) throws IOException {
+		saveToStream(Channels.newOutputStream(channel), format, quality);
+	}
+	
+	/**
+	 * Generates a new chart <code>Image</code> based upon the currently held 
+	 * settings and encodes it with the given encoder straight into the given 
+	 * channel. The channel is not closed. See 
+	 * {@link #saveToStream(OutputStream, ChartEncoder)} for details.
+	 * 
+	 * @param channel the channel to write the encoded image to.
+	 * @param encoder the encoder to encode the image with.
+	 * @throws IOException if the image cannot be encoded or the channel cannot
+	 * be written to.
+	 * @since 0.6
+	 */
+	public void saveToChannel(WritableByteChannel channel, ChartEncoder encoder) throws IOException {
+		saveToStream(Channels.newOutputStream(channel), encoder);
+	}
+	
+	/*
+	 * Returns an encoder for the given format with its default settings, 
+	 * except for jpg which is encoded with a quality of 1.0.
+	 */
+	private static ChartEncoder getEncoder(String format) throws IOException {
+		boolean jpeg = format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("jpeg");
 		
+		return getEncoder(format, jpeg ? 1.0f : ImageIOEncoder.DEFAULT_QUALITY);
+	}
+	
+	/*
+	 * Returns an encoder for the given format and quality, rethrowing a 
+	 * missing writer as an IOException.
+	 */
+	private static ChartEncoder getEncoder(String format, float quality) throws IOException {
+		try {
+			return new ImageIOEncoder(format, quality);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage());
+		}
 	}
 	
 	/**
@@ -1297,44 +2025,118 @@ public class HeatChart {
 	 * is a <code>BufferedImage</code>.
 	 */
 	public Image getChartImage(boolean alpha) {
-		// Calculate all unknown dimensions.
-		measureComponents();
-		updateCoordinates();
-		
-		// Determine image type based upon whether require alpha or not.
-		// Using BufferedImage.TYPE_INT_ARGB seems to break on jpg.
-		int imageType = (alpha ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+		HeatChartSpec spec = new HeatChartSpec(this, layout);
 		
-		// Create our chart image which we will eventually draw everything on.
-		BufferedImage chartImage = new BufferedImage(chartSize.width, chartSize.height, imageType);
-		Graphics2D chartGraphics = chartImage.createGraphics();
+		BufferedImage chartImage = getRenderer().render(spec, alpha);
 		
-		// Use anti-aliasing where ever possible.
-		chartGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
-									   RenderingHints.VALUE_ANTIALIAS_ON);
-		
-		// Set the background.
-		chartGraphics.setColor(backgroundColour);
-		chartGraphics.fillRect(0, 0, chartSize.width, chartSize.height);
-		
-		// Draw the title.
-		drawTitle(chartGraphics);
-		
-		// Draw the heatmap image.
-		drawHeatMap(chartGraphics, zValues);
-		
-		// Draw the axis labels.
-		drawXLabel(chartGraphics);
-		drawYLabel(chartGraphics);
-		
-		// Draw the axis bars.
-		drawAxisBars(chartGraphics);
+		// Keep the layout measured, for reuse by the next chart.
+		layout = spec.layout;
+		chartSize = layout.chartSize;
+		return chartImage;
+	}
+	
+	/**
+	 * Returns a chart <code>Image</code> that is kept by the chart and updated
+	 * in place as cells change, rather than generated afresh. The first call 
+	 * generates the chart as <code>getChartImage(boolean)</code> does. Later 
+	 * calls return the same image, with only the cells changed since by 
+	 * <code>updateCell</code> or <code>updateCells</code> repainted, so the 
+	 * cost depends on the number of changed cells rather than the size of the
+	 * chart. If the heat map is downsampled, each changed cell's block is 
+	 * aggregated again.
+	 * 
+	 * <p>
+	 * The image is generated again in full if any other setting or the 
+	 * z-values have been replaced since the last call, if transparency is 
+	 * requested differently, or if so many cells have changed that 
+	 * repainting them one at a time would be slower.
+	 * 
+	 * @param alpha whether to enable transparency.
+	 * @return the retained chart <code>Image</code>, brought up to date. The 
+	 * returned image is a <code>BufferedImage</code>.
+	 * @since 0.6
+	 */
+	public Image getRetainedChartImage(boolean alpha) {
+		if (retainedImage == null || retainedAlpha != alpha) {
+			HeatChartRenderer renderer = getRenderer();
+			long start = (renderListener != null) ? System.nanoTime() : 0;
+			ChartRenderEvent event = new ChartRenderEvent();
+			event.begin();
+			
+			retainedSpec = new HeatChartSpec(this, layout);
+			retainedChart = HeatChartRenderer.getChartData(retainedSpec);
+			retainedLayout = renderer.getLayout(retainedSpec, retainedChart);
+			retainedPaletteIndices = indexedColour ? new byte[colourMap.size()] : null;
+			retainedImage = renderer.drawChart(retainedSpec, alpha, retainedLayout, retainedChart, retainedPaletteIndices);
+			retainedAlpha = alpha;
+			noDirtyCells = 0;
+			pendingScroll = 0;
+			
+			layout = retainedLayout;
+			chartSize = layout.chartSize;
+			renderer.chartRendered(retainedSpec, event, start, retainedLayout, alpha);
+		} else {
+			if (pendingScroll > 0) {
+				scrollRetainedImage();
+			}
+			if (noDirtyCells > 0) {
+				repaintDirtyCells();
+			}
+			pendingScroll = 0;
+		}
+		return retainedImage;
+	}
+	
+	/**
+	 * Generates the chart based upon the currently held settings and encodes 
+	 * it as a PNG straight into the given stream, without ever holding the 
+	 * whole chart image in memory. The chart is drawn in horizontal bands of 
+	 * whole rows of cells, each of roughly a million pixels, which are 
+	 * encoded as they are drawn. The area above the heat map, holding the 
+	 * title, and the area below it, holding the x-axis values and label, 
+	 * are bands of their own.
+	 * 
+	 * <p>
+	 * This allows charts to be generated that are larger than the largest 
+	 * possible <code>BufferedImage</code>, or too large to fit in memory, 
+	 * with memory use depending on the width of the chart but not its 
+	 * height. The encoded image is identical to that produced by 
+	 * <code>saveToStream</code> with the same encoder, except that 
+	 * <code>saveToStream</code> may palettise an RGB chart of few enough 
+	 * colours, which bands cannot be. The stream is flushed but not closed.
+	 * 
+	 * @param out the stream to write the encoded image to.
+	 * @param encoder the PNG encoder to encode the bands with.
+	 * @throws IOException if the stream cannot be written to.
+	 * @since 0.6
+	 */
+	public void saveBanded(OutputStream out, PngEncoder encoder) throws IOException {
+		HeatChartSpec spec = new HeatChartSpec(this, layout);
 		
-		// Draw axis values.
-		drawXValues(chartGraphics);
-		drawYValues(chartGraphics);
+		getRenderer().renderBanded(spec, out, encoder);
 		
-		return chartImage;
+		layout = spec.layout;
+		chartSize = layout.chartSize;
+	}
+	
+	/**
+	 * Generates the chart based upon the currently held settings and saves it
+	 * as a PNG to the given file, without ever holding the whole chart image 
+	 * in memory. See {@link #saveBanded(OutputStream, PngEncoder)} for 
+	 * details.
+	 * 
+	 * @param outputFile the file location that the PNG should be written to.
+	 * @param encoder the PNG encoder to encode the bands with.
+	 * @throws IOException if the file is unable to be written to.
+	 * @since 0.6
+	 */
+	public void saveBanded(File outputFile, PngEncoder encoder) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+		try {
+			saveBanded(out, encoder);
+		} finally {
+			out.close();
+		}
 	}
 	
 	/**
@@ -1354,419 +2156,232 @@ public class HeatChart {
 		return getChartImage(false);
 	}
 	
-	/*
-	 * Calculates all unknown component dimensions.
+	/**
+	 * Returns an immutable snapshot of the chart's current settings, along 
+	 * with a reference to its z-values, which can be rendered by a 
+	 * {@link HeatChartRenderer} from any number of threads at once. Later 
+	 * changes to the chart's settings do not affect the spec, but changes to
+	 * the z-values themselves, such as by <code>updateCell</code>, do, and 
+	 * must not be made while the spec is being rendered.
+	 * 
+	 * @return a snapshot of the chart's settings.
+	 * @since 0.6
 	 */
-	private void measureComponents() {
-		//TODO This would be a good place to check that all settings have sensible values or throw illegal state exception.
-		
-		//TODO Put this somewhere so it only gets created once.
-		BufferedImage chartImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D tempGraphics = chartImage.createGraphics();
-		
-		// Calculate title dimensions.
-		if (title != null) {
-			tempGraphics.setFont(titleFont);
-			FontMetrics metrics = tempGraphics.getFontMetrics();
-			titleSize = new Dimension(metrics.stringWidth(title), metrics.getHeight());
-			titleAscent = metrics.getAscent();
-		} else {
-			titleSize = new Dimension(0, 0);
-		}
-		
-		// Calculate x-axis label dimensions.
-		if (xAxisLabel != null) {
-			tempGraphics.setFont(axisLabelsFont);
-			FontMetrics metrics = tempGraphics.getFontMetrics();
-			xAxisLabelSize = new Dimension(metrics.stringWidth(xAxisLabel), metrics.getHeight());
-			xAxisLabelDescent = metrics.getDescent();
-		} else {
-			xAxisLabelSize = new Dimension(0, 0);
-		}
-		
-		// Calculate y-axis label dimensions.
-		if (yAxisLabel != null) {
-			tempGraphics.setFont(axisLabelsFont);
-			FontMetrics metrics = tempGraphics.getFontMetrics();
-			yAxisLabelSize = new Dimension(metrics.stringWidth(yAxisLabel), metrics.getHeight());
-			yAxisLabelAscent = metrics.getAscent();
-		} else {
-			yAxisLabelSize = new Dimension(0, 0);
-		}
-		
-		// Calculate x-axis value dimensions.
-		if (showXAxisValues) {
-			tempGraphics.setFont(axisValuesFont);
-			FontMetrics metrics = tempGraphics.getFontMetrics();
-			xAxisValuesHeight = metrics.getHeight();
-			xAxisValuesWidthMax = 0;
-			for (Object o: xValues) {
-				int w = metrics.stringWidth(o.toString());
-				if (w > xAxisValuesWidthMax) {
-					xAxisValuesWidthMax = w;
-				}
-			}
-		} else {
-			xAxisValuesHeight = 0;
-		}
-		
-		// Calculate y-axis value dimensions.
-		if (showYAxisValues) {
-			tempGraphics.setFont(axisValuesFont);
-			FontMetrics metrics = tempGraphics.getFontMetrics();
-			yAxisValuesHeight = metrics.getHeight();
-			yAxisValuesAscent = metrics.getAscent();
-			yAxisValuesWidthMax = 0;
-			for (Object o: yValues) {
-				int w = metrics.stringWidth(o.toString());
-				if (w > yAxisValuesWidthMax) {
-					yAxisValuesWidthMax = w;
-				}
-			}
-		} else {
-			yAxisValuesHeight = 0;
-		}
-		
-		// Calculate heatmap dimensions.
-		int heatMapWidth = (zValues[0].length * cellSize.width);
-		int heatMapHeight = (zValues.length * cellSize.height);
-		heatMapSize = new Dimension(heatMapWidth, heatMapHeight);
-		
-		int yValuesHorizontalSize = 0;
-		if (yValuesHorizontal) {
-			yValuesHorizontalSize = yAxisValuesWidthMax;
-		} else {
-			yValuesHorizontalSize = yAxisValuesHeight;
-		}
-		
-		int xValuesVerticalSize = 0;
-		if (xValuesHorizontal) {
-			xValuesVerticalSize = xAxisValuesHeight;
-		} else {
-			xValuesVerticalSize = xAxisValuesWidthMax;
-		}
-		
-		// Calculate chart dimensions.
-		int chartWidth = heatMapWidth + (2 * margin) + yAxisLabelSize.height + yValuesHorizontalSize + axisThickness;
-		int chartHeight = heatMapHeight + (2 * margin) + xAxisLabelSize.height + xValuesVerticalSize + titleSize.height + axisThickness;
-		chartSize = new Dimension(chartWidth, chartHeight);
-	}
-	
-	/*
-	 * Calculates the co-ordinates of some key positions.
-	 */
-	private void updateCoordinates() {
-		// Top-left of heat map.
-		int x = margin + axisThickness + yAxisLabelSize.height;
-		x += (yValuesHorizontal ? yAxisValuesWidthMax : yAxisValuesHeight);
-		int y = titleSize.height + margin;
-		heatMapTL = new Point(x, y);
-
-		// Top-right of heat map.
-		x = heatMapTL.x + heatMapSize.width;
-		y = heatMapTL.y + heatMapSize.height;
-		heatMapBR = new Point(x, y);
-		
-		// Centre of heat map.
-		x = heatMapTL.x + (heatMapSize.width / 2);
-		y = heatMapTL.y + (heatMapSize.height / 2);
-		heatMapC = new Point(x, y);
+	public HeatChartSpec getSpec() {
+		return new HeatChartSpec(this, null);
 	}
 	
 	/*
-	 * Draws the title String on the chart if title is not null.
+	 * Returns a renderer that renders with the current executor and listener.
 	 */
-	private void drawTitle(Graphics2D chartGraphics) {
-		if (title != null) {			
-			// Strings are drawn from the baseline position of the leftmost char.
-			int yTitle = (margin/2) + titleAscent;
-			int xTitle = (chartSize.width/2) - (titleSize.width/2);
-
-			chartGraphics.setFont(titleFont);
-			chartGraphics.setColor(titleColour);
-			chartGraphics.drawString(title, xTitle, yTitle);
-		}
+	private HeatChartRenderer getRenderer() {
+		return new HeatChartRenderer(renderExecutor, renderListener);
 	}
 	
 	/*
-	 * Creates the actual heatmap element as an image, that can then be drawn 
-	 * onto a chart.
+	 * Discards the layout of the previous chart, so that all components are 
+	 * measured again for the next chart. Must be called whenever a setting 
+	 * that affects the size or position of any component is changed.
 	 */
-	private void drawHeatMap(Graphics2D chartGraphics, double[][] data) {
-		// Calculate the available size for the heatmap.
-		int noYCells = data.length;
-		int noXCells = data[0].length;
-		
-		//double dataMin = min(data);
-		//double dataMax = max(data);
-
-		BufferedImage heatMapImage = new BufferedImage(heatMapSize.width, heatMapSize.height, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D heatMapGraphics = heatMapImage.createGraphics();
-		
-		for (int x=0; x<noXCells; x++) {
-			for (int y=0; y<noYCells; y++) {
-				// Set colour depending on zValues.
-				heatMapGraphics.setColor(getCellColour(data[y][x], lowValue, highValue));
-				
-				int cellX = x*cellSize.width;
-				int cellY = y*cellSize.height;
-				
-				heatMapGraphics.fillRect(cellX, cellY, cellSize.width, cellSize.height);
-			}
-		}
-		
-		// Draw the heat map onto the chart.
-		chartGraphics.drawImage(heatMapImage, heatMapTL.x, heatMapTL.y, heatMapSize.width, heatMapSize.height, null);
+	private void invalidateLayout() {
+		layout = null;
+		invalidateImage();
 	}
 	
 	/*
-	 * Draws the x-axis label string if it is not null.
-	 */
-	private void drawXLabel(Graphics2D chartGraphics) {
-		if (xAxisLabel != null) {
-			// Strings are drawn from the baseline position of the leftmost char.
-			int yPosXAxisLabel = chartSize.height - (margin / 2) - xAxisLabelDescent;
-			//TODO This will need to be updated if the y-axis values/label can be moved to the right.
-			int xPosXAxisLabel = heatMapC.x - (xAxisLabelSize.width / 2);
-			
-			chartGraphics.setFont(axisLabelsFont);
-			chartGraphics.setColor(axisLabelColour);
-			chartGraphics.drawString(xAxisLabel, xPosXAxisLabel, yPosXAxisLabel);
-		}
+	 * Discards the retained chart image, so that it is generated in full when
+	 * next requested. Must be called whenever a setting that affects the 
+	 * appearance of the chart is changed.
+	 */
+	private void invalidateImage() {
+		retainedImage = null;
+		retainedSpec = null;
+		retainedLayout = null;
+		retainedChart = null;
+		retainedPaletteIndices = null;
+		noDirtyCells = 0;
+		pendingScroll = 0;
 	}
 	
 	/*
-	 * Draws the y-axis label string if it is not null.
+	 * Records that a cell has changed since the retained image was drawn. 
+	 * Once more than a quarter of the cells have changed the image is simply
+	 * discarded, as generating it again is then cheaper.
 	 */
-	private void drawYLabel(Graphics2D chartGraphics) {
-		if (yAxisLabel != null) {
-			// Strings are drawn from the baseline position of the leftmost char.
-			int yPosYAxisLabel = heatMapC.y + (yAxisLabelSize.width / 2);
-			int xPosYAxisLabel = (margin / 2) + yAxisLabelAscent;
-			
-			chartGraphics.setFont(axisLabelsFont);
-			chartGraphics.setColor(axisLabelColour);
-			
-			// Create 270 degree rotated transform.
-			AffineTransform transform = chartGraphics.getTransform();
-			AffineTransform originalTransform = (AffineTransform) transform.clone();
-			transform.rotate(Math.toRadians(270), xPosYAxisLabel, yPosYAxisLabel);
-			chartGraphics.setTransform(transform);
-			
-			// Draw string.
-			chartGraphics.drawString(yAxisLabel, xPosYAxisLabel, yPosYAxisLabel);
-			
-			// Revert to original transform before rotation.
-			chartGraphics.setTransform(originalTransform);
+	private void markDirty(int row, int column) {
+		if (retainedImage == null) {
+			return;
 		}
-	}
-	
-	/*
-	 * Draws the bars of the x-axis and y-axis.
-	 */
-	private void drawAxisBars(Graphics2D chartGraphics) {
-		if (axisThickness > 0) {
-			chartGraphics.setColor(axisColour);
-			
-			// Draw x-axis.
-			int x = heatMapTL.x - axisThickness;
-			int y = heatMapBR.y;
-			int width = heatMapSize.width + axisThickness;
-			int height = axisThickness;
-			chartGraphics.fillRect(x, y, width, height);
-			
-			// Draw y-axis.
-			x = heatMapTL.x - axisThickness;
-			y = heatMapTL.y;
-			width = axisThickness;
-			height = heatMapSize.height;
-			chartGraphics.fillRect(x, y, width, height);
+		
+		long noCells = (long) zValues.getRowCount() * zValues.getColumnCount();
+		if (noDirtyCells >= noCells / 4) {
+			invalidateImage();
+			return;
+		}
+		
+		if (dirtyCells == null) {
+			dirtyCells = new long[16];
+		} else if (noDirtyCells == dirtyCells.length) {
+			dirtyCells = Arrays.copyOf(dirtyCells, dirtyCells.length * 2);
 		}
+		// Columns are recorded as they were when the retained image was drawn.
+		dirtyCells[noDirtyCells++] = ((long) row << 32) | ((column + pendingScroll) & 0xFFFFFFFFL);
 	}
 	
 	/*
-	 * Draws the x-values onto the x-axis if showXAxisValues is set to true.
+	 * Scrolls the heat map of the retained image along by the number of 
+	 * columns appended since it was drawn, then draws the new columns and 
+	 * everything below the heat map, which holds the x-axis values.
 	 */
-	private void drawXValues(Graphics2D chartGraphics) {
-		if (!showXAxisValues) {
-			return;
+	private void scrollRetainedImage() {
+		RenderListener listener = renderListener;
+		long start = (listener != null) ? System.nanoTime() : 0;
+		
+		ChartLayout layout = retainedLayout;
+		DataBuffer pixels = retainedImage.getRaster().getDataBuffer();
+		int scanline = retainedImage.getWidth();
+		int cellWidth = layout.cellWidth;
+		
+		Object pixelArray;
+		if (pixels instanceof DataBufferByte) {
+			pixelArray = ((DataBufferByte) pixels).getData();
+		} else {
+			pixelArray = ((DataBufferInt) pixels).getData();
 		}
 		
-		chartGraphics.setColor(axisValuesColour);
+		// Move the columns that are still shown, a pixel row at a time.
+		int noKept = layout.columns - pendingScroll;
+		int offset = (layout.heatMapTL.y * scanline) + layout.heatMapTL.x;
+		for (int y=0; y<layout.heatMapSize.height; y++) {
+			System.arraycopy(pixelArray, offset + (pendingScroll * cellWidth), pixelArray, offset, noKept * cellWidth);
+			offset += scanline;
+		}
 		
-		for (int i=0; i<xValues.length; i++) {
-			if (i % xAxisValuesFrequency != 0) {
-				continue;
-			}
-			
-			String xValueStr = xValues[i].toString();
-			
-			chartGraphics.setFont(axisValuesFont);
-			FontMetrics metrics = chartGraphics.getFontMetrics();
-			
-			int valueWidth = metrics.stringWidth(xValueStr);
-			
-			if (xValuesHorizontal) {
-				// Draw the value with whatever font is now set.
-				int valueXPos = (i * cellSize.width) + ((cellSize.width / 2) - (valueWidth / 2));
-				valueXPos += heatMapTL.x;
-				int valueYPos = heatMapBR.y + metrics.getAscent() + 1;
-				
-				chartGraphics.drawString(xValueStr, valueXPos, valueYPos);
-			} else {
-				int valueXPos = heatMapTL.x + (i * cellSize.width) + ((cellSize.width / 2) + (xAxisValuesHeight / 2));
-				int valueYPos = heatMapBR.y + axisThickness + valueWidth;
-				
-				// Create 270 degree rotated transform.
-				AffineTransform transform = chartGraphics.getTransform();
-				AffineTransform originalTransform = (AffineTransform) transform.clone();
-				transform.rotate(Math.toRadians(270), valueXPos, valueYPos);
-				chartGraphics.setTransform(transform);
-				
-				// Draw the string.
-				chartGraphics.drawString(xValueStr, valueXPos, valueYPos);
-				
-				// Revert to original transform before rotation.
-				chartGraphics.setTransform(originalTransform);
+		for (int row=0; row<layout.rows; row++) {
+			for (int column=noKept; column<layout.columns; column++) {
+				HeatChartRenderer.drawCell(retainedSpec.colourMap, pixels, retainedPaletteIndices, scanline, layout, row, column, zValues.get(row, column), retainedChart.low, retainedChart.high);
 			}
 		}
+		
+		if (listener != null) {
+			// Every pixel of the heat map has been written, moved or drawn.
+			long cells = (long) layout.rows * pendingScroll;
+			listener.heatMapDrawn(System.nanoTime() - start, cells, (long) layout.heatMapSize.width * layout.heatMapSize.height);
+		}
+		
+		int top = layout.heatMapBR.y;
+		if (top < retainedImage.getHeight()) {
+			BufferedImage below = retainedImage.getSubimage(0, top, scanline, retainedImage.getHeight() - top);
+			getRenderer().drawBand(retainedSpec, below, top, layout, retainedChart, retainedPaletteIndices, layout.rows, layout.rows);
+		}
 	}
 	
 	/*
-	 * Draws the y-values onto the y-axis if showYAxisValues is set to true.
-	 */
-	private void drawYValues(Graphics2D chartGraphics) {
-		if (!showYAxisValues) {
-			return;
-		}
+	 * Repaints the cells of the retained image that have changed since it was
+	 * drawn. Where the heat map is downsampled the block that each changed 
+	 * cell belongs to is aggregated again from the z-values.
+	 */
+	private void repaintDirtyCells() {
+		RenderListener listener = renderListener;
+		long start = (listener != null) ? System.nanoTime() : 0;
+		int noDrawn = 0;
 		
-		chartGraphics.setColor(axisValuesColour);
+		ChartData chart = retainedChart;
+		DataBuffer pixels = retainedImage.getRaster().getDataBuffer();
+		int scanline = retainedImage.getWidth();
+		boolean downsampled = (chart.rowBlock > 1 || chart.columnBlock > 1);
 		
-		for (int i=0; i<yValues.length; i++) {
-			if (i % yAxisValuesFrequency != 0) {
+		for (int i=0; i<noDirtyCells; i++) {
+			int row = (int) (dirtyCells[i] >>> 32);
+			int column = (int) dirtyCells[i] - pendingScroll;
+			if (column < 0) {
+				// Since scrolled off the chart.
 				continue;
 			}
 			
-			String yValueStr = yValues[i].toString();
-			
-			chartGraphics.setFont(axisValuesFont);
-			FontMetrics metrics = chartGraphics.getFontMetrics();
-			
-			int valueWidth = metrics.stringWidth(yValueStr);
-			
-			if (yValuesHorizontal) {
-				// Draw the value with whatever font is now set.
-				int valueXPos = margin + yAxisLabelSize.height + (yAxisValuesWidthMax - valueWidth);
-				int valueYPos = heatMapTL.y + (i * cellSize.height) + (cellSize.height/2) + (yAxisValuesAscent/2);
+			double value;
+			if (downsampled) {
+				row /= chart.rowBlock;
+				column /= chart.columnBlock;
+				int fromRow = row * chart.rowBlock;
+				int fromColumn = column * chart.columnBlock;
+				int toRow = Math.min(zValues.getRowCount(), fromRow + chart.rowBlock);
+				int toColumn = Math.min(zValues.getColumnCount(), fromColumn + chart.columnBlock);
 				
-				chartGraphics.drawString(yValueStr, valueXPos, valueYPos);
+				value = downsampleAggregation.aggregate(zValues, fromRow, toRow, fromColumn, toColumn);
+				((MutableHeatMatrix) chart.data).set(row, column, value);
 			} else {
-				int valueXPos = margin + yAxisLabelSize.height + yAxisValuesAscent;
-				int valueYPos = heatMapTL.y + (i * cellSize.height) + (cellSize.height/2) + (valueWidth/2);
-				
-				// Create 270 degree rotated transform.
-				AffineTransform transform = chartGraphics.getTransform();
-				AffineTransform originalTransform = (AffineTransform) transform.clone();
-				transform.rotate(Math.toRadians(270), valueXPos, valueYPos);
-				chartGraphics.setTransform(transform);
-				
-				// Draw the string.
-				chartGraphics.drawString(yValueStr, valueXPos, valueYPos);
-				
-				// Revert to original transform before rotation.
-				chartGraphics.setTransform(originalTransform);
+				value = zValues.get(row, column);
 			}
+			
+			HeatChartRenderer.drawCell(retainedSpec.colourMap, pixels, retainedPaletteIndices, scanline, retainedLayout, row, column, value, chart.low, chart.high);
+			noDrawn++;
+		}
+		noDirtyCells = 0;
+		
+		if (listener != null) {
+			listener.heatMapDrawn(System.nanoTime() - start, noDrawn, (long) noDrawn * retainedLayout.cellWidth * retainedLayout.cellHeight);
 		}
 	}
 	
 	/*
 	 * Determines what colour a heat map cell should be based upon the cell 
-	 * values.
+	 * value, returned as a packed ARGB int.
 	 */
-	private Color getCellColour(double data, double min, double max) {		
-		double range = max - min;
-		double position = data - min;
-
-		// What proportion of the way through the possible values is that.
-		double percentPosition = position / range;
-		
-		// Which colour group does that put us in.
-		int colourPosition = getColourPosition(percentPosition);
-		
-		int r = lowValueColour.getRed();
-		int g = lowValueColour.getGreen();
-		int b = lowValueColour.getBlue();
-		
-		// Make n shifts of the colour, where n is the colourPosition.
-		for (int i=0; i<colourPosition; i++) {
-			int rDistance = r - highValueColour.getRed();
-			int gDistance = g - highValueColour.getGreen();
-			int bDistance = b - highValueColour.getBlue();
-			
-			if ((Math.abs(rDistance) >= Math.abs(gDistance))
-						&& (Math.abs(rDistance) >= Math.abs(bDistance))) {
-				// Red must be the largest.
-				r = changeColourValue(r, rDistance);
-			} else if (Math.abs(gDistance) >= Math.abs(bDistance)) {
-				// Green must be the largest.
-				g = changeColourValue(g, gDistance);
-			} else {
-				// Blue must be the largest.
-				b = changeColourValue(b, bDistance);
-			}
-		}
-		
-		return new Color(r, g, b);
+	int getCellColour(double data, double min, double max) {
+		return colourMap.getCellColour(data, min, max);
 	}
 	
-	/*
-	 * Returns how many colour shifts are required from the lowValueColour to 
-	 * get to the correct colour position. The result will be different 
-	 * depending on the colour scale used: LINEAR, LOGARITHMIC, EXPONENTIAL.
+	/**
+	 * Finds and returns the maximum finite value in a 2-dimensional array of 
+	 * doubles. NaN and infinite values are ignored. Use 
+	 * {@link ValueRange#scan(double[][])} to find both the minimum and maximum
+	 * values in one pass.
+	 * 
+	 * @return the largest value in the array, or NaN if there are no finite 
+	 * values.
 	 */
-	private int getColourPosition(double percentPosition) {
-		return (int) Math.round(colourValueDistance * Math.pow(percentPosition, colourScale));
+	public static double max(double[][] values) {
+		return ValueRange.scan(values).getMax();
 	}
 	
-	private int changeColourValue(int colourValue, int colourDistance) {
-		if (colourDistance < 0) {
-			return colourValue+1;
-		} else if (colourDistance > 0) {
-			return colourValue-1;
-		} else {
-			// This shouldn't actually happen here.
-			return colourValue;
-		}
+	/**
+	 * Finds and returns the minimum finite value in a 2-dimensional array of 
+	 * doubles. NaN and infinite values are ignored. Use 
+	 * {@link ValueRange#scan(double[][])} to find both the minimum and maximum
+	 * values in one pass.
+	 * 
+	 * @return the smallest value in the array, or NaN if there are no finite
+	 * values.
+	 */
+	public static double min(double[][] values) {
+		return ValueRange.scan(values).getMin();
 	}
 	
 	/**
-	 * Finds and returns the maximum value in a 2-dimensional array of doubles.
+	 * Finds and returns the maximum finite value in a matrix of z-values. NaN
+	 * and infinite values are ignored. Use {@link ValueRange#scan(HeatMatrix)}
+	 * to find both the minimum and maximum values in one pass.
 	 * 
-	 * @return the largest value in the array.
+	 * @return the largest value in the matrix, or NaN if there are no finite 
+	 * values.
+	 * @since 0.6
 	 */
-	public static double max(double[][] values) {
-		double max = 0;
-		for (int i=0; i<values.length; i++) {
-			for (int j=0; j<values[i].length; j++) {
-				max = (values[i][j] > max) ? values[i][j] : max;
-			}			
-		}
-		return max;
+	public static double max(HeatMatrix values) {
+		return ValueRange.scan(values).getMax();
 	}
 	
 	/**
-	 * Finds and returns the minimum value in a 2-dimensional array of doubles.
+	 * Finds and returns the minimum finite value in a matrix of z-values. NaN
+	 * and infinite values are ignored. Use {@link ValueRange#scan(HeatMatrix)}
+	 * to find both the minimum and maximum values in one pass.
 	 * 
-	 * @return the smallest value in the array.
+	 * @return the smallest value in the matrix, or NaN if there are no finite
+	 * values.
+	 * @since 0.6
 	 */
-	public static double min(double[][] values) {
-		double min = Double.MAX_VALUE;
-		for (int i=0; i<values.length; i++) {
-			for (int j=0; j<values[i].length; j++) {
-				min = (values[i][j] < min) ? values[i][j] : min;
-			}
-		}
-		return min;
+	public static double min(HeatMatrix values) {
+		return ValueRange.scan(values).getMin();
 	}
 
 }
@@ -0,0 +1,900 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A <code>HeatChartRenderer</code> draws charts from {@link HeatChartSpec}s.
+ * A renderer holds no state of its own between renders: everything a render
+ * needs is either read from the immutable spec or kept on the stack of the 
+ * rendering thread. So a single renderer may render any number of specs, or 
+ * the same spec many times, from any number of threads at once, without 
+ * locking and without copying the spec or its z-values.
+ * 
+ * <p>
+ * This is how a {@link HeatChart} draws itself, so the charts rendered are
+ * identical to those of the chart the spec was taken from. For example, to 
+ * render a chart for many requests at once:
+ * 
+ * <pre>
+ * HeatChartSpec spec = chart.getSpec();
+ * HeatChartRenderer renderer = new HeatChartRenderer();
+ * 
+ * // Then on any thread.
+ * BufferedImage image = renderer.render(spec, false);
+ * </pre>
+ * 
+ * @see HeatChartSpec
+ * @since 0.6
+ */
+public final class HeatChartRenderer {
+
+	// Heat maps with fewer pixels than this are not worth splitting up.
+	private static final int MIN_PARALLEL_PIXELS = 1 << 16;
+	
+	// Roughly how many pixels each band of a banded chart holds.
+	private static final int BAND_PIXELS = 1 << 20;
+	
+	// How many bands of rows to split the heat map into per processor.
+	private static final int BANDS_PER_PROCESSOR = 4;
+	
+	// Executor to render heat map bands on, or null for the calling thread.
+	private final ExecutorService executor;
+	
+	// Told how long each phase of a render takes, or null if there is none.
+	private final RenderListener listener;
+	
+	/**
+	 * Constructs a renderer that renders each chart entirely on the calling 
+	 * thread, and takes no timings.
+	 */
+	public HeatChartRenderer() {
+		this(null, null);
+	}
+	
+	/**
+	 * Constructs a renderer that splits the heat map of large charts into 
+	 * bands of rows rendered in parallel on the given executor, as 
+	 * <code>HeatChart.setRenderExecutor</code> does.
+	 * 
+	 * @param executor the executor to render heat map bands on, or 
+	 * <tt>null</tt> to render on the calling thread.
+	 */
+	public HeatChartRenderer(ExecutorService executor) {
+		this(executor, null);
+	}
+	
+	/**
+	 * Constructs a renderer that splits the heat map of large charts into 
+	 * bands of rows rendered in parallel on the given executor, and reports 
+	 * how long each phase of every render takes to the given listener. The
+	 * listener is called from every thread that renders, so must be safe for
+	 * use from multiple threads if renders are made from multiple threads.
+	 * 
+	 * @param executor the executor to render heat map bands on, or 
+	 * <tt>null</tt> to render on the calling thread.
+	 * @param listener the listener to report each phase to, or <tt>null</tt>
+	 * for none.
+	 */
+	public HeatChartRenderer(ExecutorService executor, RenderListener listener) {
+		this.executor = executor;
+		this.listener = listener;
+	}
+	
+	/**
+	 * Returns the executor that heat map bands are rendered on, or 
+	 * <tt>null</tt> if charts are rendered on the calling thread.
+	 * 
+	 * @return the executor used for parallel rendering of the heat map.
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * Returns the listener that is told how long each phase of a render 
+	 * takes, or <tt>null</tt> if there is none.
+	 * 
+	 * @return the render listener, or <tt>null</tt>.
+	 */
+	public RenderListener getListener() {
+		return listener;
+	}
+	
+	/**
+	 * Renders the chart described by the given spec to a new image, as 
+	 * <code>HeatChart.getChartImage(boolean)</code> does.
+	 * 
+	 * @param spec the chart to render.
+	 * @param alpha whether to enable transparency.
+	 * @return a newly generated chart image.
+	 */
+	public BufferedImage render(HeatChartSpec spec, boolean alpha) {
+		long start = (listener != null) ? System.nanoTime() : 0;
+		ChartRenderEvent event = new ChartRenderEvent();
+		event.begin();
+		
+		ChartData chart = getChartData(spec);
+		
+		// Calculate all unknown dimensions, unless already known.
+		ChartLayout layout = getLayout(spec, chart);
+		
+		byte[] paletteIndices = spec.indexedColour ? new byte[spec.colourMap.size()] : null;
+		BufferedImage chartImage = drawChart(spec, alpha, layout, chart, paletteIndices);
+		
+		chartRendered(spec, event, start, layout, alpha);
+		return chartImage;
+	}
+	
+	/**
+	 * Renders the chart described by the given spec and encodes it to the 
+	 * given stream with the given encoder, as 
+	 * <code>HeatChart.saveToStream(OutputStream, ChartEncoder)</code> does. 
+	 * The stream is not closed.
+	 * 
+	 * @param spec the chart to render.
+	 * @param out the stream to write the encoded image to.
+	 * @param encoder the encoder to encode the image with.
+	 * @throws IOException if the stream cannot be written to.
+	 */
+	public void render(HeatChartSpec spec, OutputStream out, ChartEncoder encoder) throws IOException {
+		BufferedImage chart = render(spec, encoder.isAlphaSupported());
+		
+		encodeChart(chart, encoder, out);
+	}
+	
+	/**
+	 * Renders the chart described by the given spec and encodes it as a PNG 
+	 * straight into the given stream, as 
+	 * <code>HeatChart.saveBanded(OutputStream, PngEncoder)</code> does, without ever holding the 
+	 * whole chart image in memory. The chart is drawn in horizontal bands of 
+	 * whole rows of cells, each of roughly a million pixels, which are 
+	 * encoded as they are drawn. The area above the heat map, holding the 
+	 * title, and the area below it, holding the x-axis values and label, 
+	 * are bands of their own.
+	 * 
+	 * <p>
+	 * This allows charts to be generated that are larger than the largest 
+	 * possible <code>BufferedImage</code>, or too large to fit in memory, 
+	 * with memory use depending on the width of the chart but not its 
+	 * height. The encoded image is identical to that produced by 
+	 * <code>render(HeatChartSpec, OutputStream, ChartEncoder)</code> with the
+	 * same encoder, except that it may palettise an RGB chart of few enough 
+	 * colours, which bands cannot be. The stream is flushed but not closed.
+	 * 
+	 * @param spec the chart to render.
+	 * @param out the stream to write the encoded image to.
+	 * @param encoder the PNG encoder to encode the bands with.
+	 * @throws IOException if the stream cannot be written to.
+	 */
+	public void renderBanded(HeatChartSpec spec, OutputStream out, PngEncoder encoder) throws IOException {
+		ChartEncodeEvent event = new ChartEncodeEvent();
+		long start = 0;
+		CountingOutputStream counter = null;
+		
+		// Decided once, as a recording may start while the chart is saved.
+		boolean record = (listener != null || event.isEnabled());
+		if (record) {
+			start = System.nanoTime();
+			event.begin();
+			out = counter = new CountingOutputStream(out);
+		}
+		
+		ChartData chart = getChartData(spec);
+		
+		ChartLayout layout = getLayout(spec, chart);
+		Dimension chartSize = layout.chartSize;
+		
+		byte[] paletteIndices = null;
+		IndexColorModel palette = null;
+		if (spec.indexedColour) {
+			paletteIndices = new byte[spec.colourMap.size()];
+			palette = createPalette(spec, true, paletteIndices);
+		}
+		
+		int width = chartSize.width;
+		int noRows = chart.data.getRowCount();
+		int cellHeight = layout.cellHeight;
+		int rowsPerBand = (int) Math.max(1, Math.min(noRows, BAND_PIXELS / Math.max(1L, (long) width * cellHeight)));
+		
+		// The image of the last band, reused by following bands of equal height.
+		BufferedImage band = createChartImage(width, Math.max(1, layout.heatMapTL.y), true, palette);
+		
+		PngStreamWriter writer = encoder.createWriter(out, width, chartSize.height, band);
+		boolean finished = false;
+		try {
+			// Above the heat map.
+			int top = 0;
+			int bottom = layout.heatMapTL.y;
+			band = writeBand(spec, writer, band, top, bottom, layout, chart, palette, paletteIndices, 0, 0);
+			
+			// Across the heat map, then below it.
+			for (int fromRow=0; fromRow<noRows; fromRow+=rowsPerBand) {
+				int toRow = Math.min(noRows, fromRow + rowsPerBand);
+				top = bottom;
+				bottom = layout.heatMapTL.y + (toRow * cellHeight);
+				band = writeBand(spec, writer, band, top, bottom, layout, chart, palette, paletteIndices, fromRow, toRow);
+			}
+			band = writeBand(spec, writer, band, bottom, chartSize.height, layout, chart, palette, paletteIndices, noRows, noRows);
+			
+			writer.finish();
+			finished = true;
+		} finally {
+			if (!finished) {
+				writer.cancel();
+			}
+		}
+		
+		if (listener != null) {
+			listener.chartEncoded(System.nanoTime() - start, counter.getCount());
+		}
+		event.end();
+		if (record && event.shouldCommit()) {
+			event.format = "png";
+			event.width = chartSize.width;
+			event.height = chartSize.height;
+			event.bytes = counter.getCount();
+			event.banded = true;
+			event.commit();
+		}
+	}
+	
+	/*
+	 * Draws the band of the chart between the given y positions and writes 
+	 * its rows. The given band image is reused if it is the right height, 
+	 * and the image used is returned for reuse by the next band.
+	 */
+	private BufferedImage writeBand(HeatChartSpec spec, PngStreamWriter writer, BufferedImage band, int top, int bottom, ChartLayout layout, ChartData chart, IndexColorModel palette, byte[] paletteIndices, int fromRow, int toRow) throws IOException {
+		if (bottom <= top) {
+			return band;
+		}
+		
+		if (band.getHeight() != bottom - top) {
+			band = createChartImage(band.getWidth(), bottom - top, true, palette);
+		}
+		drawBand(spec, band, top, layout, chart, paletteIndices, fromRow, toRow);
+		PngEncoder.writeRows(writer, band);
+		
+		return band;
+	}
+	
+	/*
+	 * Creates a new chart image and draws the whole chart onto it, as a 
+	 * palette image if an array for the palette indices is given.
+	 */
+	BufferedImage drawChart(HeatChartSpec spec, boolean alpha, ChartLayout layout, ChartData chart, byte[] paletteIndices) {
+		Dimension chartSize = layout.chartSize;
+		
+		// Create our chart image which we will eventually draw everything on.
+		IndexColorModel palette = null;
+		if (paletteIndices != null) {
+			palette = createPalette(spec, alpha, paletteIndices);
+		}
+		BufferedImage chartImage = createChartImage(chartSize.width, chartSize.height, alpha, palette);
+		
+		drawBand(spec, chartImage, 0, layout, chart, paletteIndices, 0, chart.data.getRowCount());
+		
+		return chartImage;
+	}
+	
+	/*
+	 * Returns the z-values, axis values and range of values to draw, 
+	 * aggregating blocks of cells if the heat map would be too large.
+	 */
+	static ChartData getChartData(HeatChartSpec spec) {
+		return getChartData(spec, spec.zValues);
+	}
+	
+	/*
+	 * Returns the given z-values, in place of those of the spec, with the 
+	 * axis values and range of values of the spec, aggregating blocks of 
+	 * cells if the heat map would be too large.
+	 */
+	static ChartData getChartData(HeatChartSpec spec, HeatMatrix zValues) {
+		ChartData chart = new ChartData(zValues, spec.xValues, spec.yValues, spec.lowValue, spec.highValue, 1, 1);
+		
+		if (spec.maxHeatMapSize != null) {
+			int rowBlock = getBlockSize(zValues.getRowCount(), spec.cellSize.height, spec.maxHeatMapSize.height);
+			int columnBlock = getBlockSize(zValues.getColumnCount(), spec.cellSize.width, spec.maxHeatMapSize.width);
+			
+			if (rowBlock > 1 || columnBlock > 1) {
+				HeatMatrix data = spec.downsampleAggregation.downsample(zValues, rowBlock, columnBlock);
+				Object[] xs = sampleAxisValues(spec.xValues, columnBlock);
+				Object[] ys = sampleAxisValues(spec.yValues, rowBlock);
+				
+				double low = spec.lowValue;
+				double high = spec.highValue;
+				if (spec.downsampleAggregation == Aggregation.SUM) {
+					low *= (double) rowBlock * columnBlock;
+					high *= (double) rowBlock * columnBlock;
+				}
+				chart = new ChartData(data, xs, ys, low, high, rowBlock, columnBlock);
+			}
+		}
+		return chart;
+	}
+	
+	/*
+	 * Returns the layout of the chart for the given z-values and axis values.
+	 * The layout measured by an earlier render of the spec is reused if the 
+	 * z-values still have the same dimensions. Renders that race to measure 
+	 * the layout each measure an identical one, so it is simply kept by 
+	 * whichever finishes last.
+	 */
+	ChartLayout getLayout(HeatChartSpec spec, ChartData chart) {
+		ChartLayout layout = spec.layout;
+		if (layout == null || !layout.fits(chart.data, spec.cellSize)) {
+			long start = (listener != null) ? System.nanoTime() : 0;
+			
+			Graphics2D measureGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+			layout = new ChartLayout(spec, chart.data, chart.xValues, chart.yValues, measureGraphics);
+			measureGraphics.dispose();
+			spec.layout = layout;
+			
+			if (listener != null) {
+				listener.layoutMeasured(System.nanoTime() - start);
+			}
+		}
+		return layout;
+	}
+	
+	/*
+	 * Creates an image for all or part of the chart, as a palette image if 
+	 * a palette is given.
+	 */
+	static BufferedImage createChartImage(int width, int height, boolean alpha, IndexColorModel palette) {
+		if (palette != null) {
+			return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, palette);
+		}
+		
+		// Determine image type based upon whether require alpha or not.
+		// An int based image lets the heat map be written straight into the 
+		// pixel array. Jpg output must use the non-alpha type.
+		int imageType = (alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		return new BufferedImage(width, height, imageType);
+	}
+	
+	/*
+	 * Draws the horizontal band of the chart starting at the given y position
+	 * onto the band image, which is the full width of the chart. The band 
+	 * covers the given rows of cells, and components outside of the band are
+	 * skipped where that is cheap to determine, or clipped otherwise.
+	 */
+	void drawBand(HeatChartSpec spec, BufferedImage band, int top, ChartLayout layout, ChartData chart, byte[] paletteIndices, int fromRow, int toRow) {
+		Graphics2D chartGraphics = band.createGraphics();
+		chartGraphics.translate(0, -top);
+		int bottom = top + band.getHeight();
+		
+		// Use anti-aliasing where ever possible. Anti-aliased drawing onto a 
+		// palette image is dithered, so would not use the exact colours.
+		if (!spec.indexedColour) {
+			chartGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
+										   RenderingHints.VALUE_ANTIALIAS_ON);
+		}
+		
+		// Set the background.
+		chartGraphics.setColor(spec.backgroundColour);
+		chartGraphics.fillRect(0, top, band.getWidth(), band.getHeight());
+		
+		// Draw the title.
+		drawTitle(spec, chartGraphics, layout);
+		
+		// Draw the heatmap image.
+		if (fromRow < toRow) {
+			long start = (listener != null) ? System.nanoTime() : 0;
+			HeatMapRasterEvent event = new HeatMapRasterEvent();
+			event.begin();
+			
+			boolean parallel = drawHeatMap(spec.colourMap, band, top, paletteIndices, layout, chart.data, chart.low, chart.high, fromRow, toRow);
+			
+			long cells = (long) (toRow - fromRow) * layout.columns;
+			long pixels = cells * layout.cellWidth * layout.cellHeight;
+			if (listener != null) {
+				listener.heatMapDrawn(System.nanoTime() - start, cells, pixels);
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.fromRow = fromRow;
+				event.rows = toRow - fromRow;
+				event.columns = layout.columns;
+				event.cells = cells;
+				event.pixels = pixels;
+				event.parallel = parallel;
+				event.commit();
+			}
+		}
+		
+		// Draw the axis labels.
+		drawXLabel(spec, chartGraphics, layout);
+		drawYLabel(spec, chartGraphics, layout);
+		
+		// Draw the axis bars.
+		drawAxisBars(spec, chartGraphics, layout);
+		
+		// Draw axis values, including those of nearby rows which may overlap.
+		long start = (listener != null) ? System.nanoTime() : 0;
+		if (bottom > layout.heatMapBR.y) {
+			drawXValues(spec, chartGraphics, layout);
+		}
+		int overlap = (Math.max(layout.yAxisValuesWidthMax, layout.yAxisValuesHeight) / Math.max(1, layout.cellHeight)) + 1;
+		int noRows = chart.data.getRowCount();
+		drawYValues(spec, chartGraphics, layout, Math.max(0, fromRow - overlap), Math.min(noRows, toRow + overlap));
+		if (listener != null) {
+			listener.axisValuesDrawn(System.nanoTime() - start);
+		}
+		
+		chartGraphics.dispose();
+	}
+	
+	/*
+	 * Returns how many cells must be aggregated into one for the given number
+	 * of cells to fit in the maximum number of pixels.
+	 */
+	private static int getBlockSize(int cells, int cellPixels, int maxPixels) {
+		int maxCells = Math.max(1, maxPixels / Math.max(1, cellPixels));
+		return ((cells - 1) / maxCells) + 1;
+	}
+	
+	/*
+	 * Returns the axis values of the first cell of each block of cells.
+	 */
+	private static Object[] sampleAxisValues(Object[] values, int blockSize) {
+		if (blockSize == 1) {
+			return values;
+		}
+		
+		Object[] sampled = new Object[((values.length - 1) / blockSize) + 1];
+		for (int i=0; i<sampled.length; i++) {
+			sampled[i] = values[i * blockSize];
+		}
+		return sampled;
+	}
+	
+	/*
+	 * Draws the title String on the chart if title is not null.
+	 */
+	private static void drawTitle(HeatChartSpec spec, Graphics2D chartGraphics, ChartLayout layout) {
+		if (spec.title != null) {			
+			// Strings are drawn from the baseline position of the leftmost char.
+			int yTitle = (spec.margin/2) + layout.titleAscent;
+			int xTitle = (layout.chartSize.width/2) - (layout.titleSize.width/2);
+
+			chartGraphics.setFont(spec.titleFont);
+			chartGraphics.setColor(spec.titleColour);
+			chartGraphics.drawString(spec.title, xTitle, yTitle);
+		}
+	}
+	
+	/*
+	 * Draws the given rows of the heatmap element by writing the colour of 
+	 * each cell directly into the pixel array of the image, whose first pixel
+	 * row is at the given y position of the chart. The image must be of an 
+	 * int based image type, or of the indexed type if palette indices are 
+	 * given. If a render executor is set then large heat maps are split into
+	 * bands of rows which are drawn in parallel. Returns whether they were.
+	 */
+	private boolean drawHeatMap(final ColourMap colourMap, BufferedImage chartImage, final int top, final byte[] paletteIndices, final ChartLayout layout, final HeatMatrix data, final double low, final double high, int fromRow, int toRow) {
+		final DataBuffer pixels = chartImage.getRaster().getDataBuffer();
+		final int scanline = chartImage.getWidth();
+		
+		int noYCells = toRow - fromRow;
+		long noPixels = (long) layout.heatMapSize.width * layout.cellHeight * noYCells;
+		
+		if (executor == null || noYCells < 2 || noPixels < MIN_PARALLEL_PIXELS) {
+			drawHeatMapRows(colourMap, pixels, top, paletteIndices, scanline, layout, data, low, high, fromRow, toRow);
+			return false;
+		}
+		
+		// Whole rows of cells per band, so no two bands write the same pixels.
+		int noBands = Tasks.bandCount(noYCells, BANDS_PER_PROCESSOR);
+		List<Callable<Object>> bands = new ArrayList<Callable<Object>>(noBands);
+		for (int i=0; i<noBands; i++) {
+			final int fromBandRow = fromRow + Tasks.bandStart(i, noBands, noYCells);
+			final int toBandRow = fromRow + Tasks.bandStart(i + 1, noBands, noYCells);
+			
+			bands.add(new Callable<Object>() {
+				public Object call() {
+					drawHeatMapRows(colourMap, pixels, top, paletteIndices, scanline, layout, data, low, high, fromBandRow, toBandRow);
+					return null;
+				}
+			});
+		}
+		
+		Tasks.invokeAll(executor, bands, "rendering heat map");
+		return true;
+	}
+	
+	/*
+	 * Draws the cells of the given range of rows of the heatmap into the pixel
+	 * buffer of the chart image, as palette indices if they are given.
+	 */
+	static void drawHeatMapRows(ColourMap colourMap, DataBuffer pixels, int top, byte[] paletteIndices, int scanline, ChartLayout layout, HeatMatrix data, double low, double high, int fromRow, int toRow) {
+		if (paletteIndices != null) {
+			byte[] indexedPixels = ((DataBufferByte) pixels).getData();
+			drawHeatMapRows(colourMap, indexedPixels, top, paletteIndices, scanline, layout, data, low, high, fromRow, toRow);
+		} else {
+			int[] rgbPixels = ((DataBufferInt) pixels).getData();
+			drawHeatMapRows(colourMap, rgbPixels, top, scanline, layout, data, low, high, fromRow, toRow);
+		}
+	}
+	
+	/*
+	 * Draws the cells of the given range of rows of the heatmap into the pixel
+	 * array of the chart image. Both the z-values and the pixels are traversed
+	 * in row order: the first pixel row of each row of cells is filled from the
+	 * z-values and then copied down to the remaining pixel rows of the cells.
+	 */
+	private static void drawHeatMapRows(ColourMap colourMap, int[] pixels, int top, int scanline, ChartLayout layout, HeatMatrix data, double low, double high, int fromRow, int toRow) {
+		int cellWidth = layout.cellWidth;
+		int cellHeight = layout.cellHeight;
+		int heatMapWidth = layout.heatMapSize.width;
+		Point heatMapTL = layout.heatMapTL;
+		
+		double[] row = new double[data.getColumnCount()];
+		for (int y=fromRow; y<toRow; y++) {
+			data.getRow(y, row);
+			int rowOffset = ((heatMapTL.y - top + (y * cellHeight)) * scanline) + heatMapTL.x;
+			
+			// Fill the first pixel row of this row of cells.
+			int offset = rowOffset;
+			for (int x=0; x<row.length; x++) {
+				// Set colour depending on zValues.
+				int colour = colourMap.getCellColour(row[x], low, high);
+				
+				if (cellWidth == 1) {
+					pixels[offset] = colour;
+				} else {
+					Arrays.fill(pixels, offset, offset + cellWidth, colour);
+				}
+				offset += cellWidth;
+			}
+			
+			// Every other pixel row of the cells is identical.
+			for (int i=1; i<cellHeight; i++) {
+				System.arraycopy(pixels, rowOffset, pixels, rowOffset + (i * scanline), heatMapWidth);
+			}
+		}
+	}
+	
+	/*
+	 * Draws the cells of the given range of rows of the heatmap into the pixel
+	 * array of an indexed chart image, in the same way as for an RGB image, 
+	 * but writing the palette index of each cell's colour.
+	 */
+	private static void drawHeatMapRows(ColourMap colourMap, byte[] pixels, int top, byte[] paletteIndices, int scanline, ChartLayout layout, HeatMatrix data, double low, double high, int fromRow, int toRow) {
+		int cellWidth = layout.cellWidth;
+		int cellHeight = layout.cellHeight;
+		int heatMapWidth = layout.heatMapSize.width;
+		Point heatMapTL = layout.heatMapTL;
+		
+		double[] row = new double[data.getColumnCount()];
+		for (int y=fromRow; y<toRow; y++) {
+			data.getRow(y, row);
+			int rowOffset = ((heatMapTL.y - top + (y * cellHeight)) * scanline) + heatMapTL.x;
+			
+			int offset = rowOffset;
+			for (int x=0; x<row.length; x++) {
+				byte index = paletteIndices[colourMap.getColourIndex(row[x], low, high)];
+				
+				if (cellWidth == 1) {
+					pixels[offset] = index;
+				} else {
+					Arrays.fill(pixels, offset, offset + cellWidth, index);
+				}
+				offset += cellWidth;
+			}
+			
+			for (int i=1; i<cellHeight; i++) {
+				System.arraycopy(pixels, rowOffset, pixels, rowOffset + (i * scanline), heatMapWidth);
+			}
+		}
+	}
+	
+	/*
+	 * Builds the palette for an indexed chart image. The colours of the other
+	 * chart components come first, then as many evenly spaced entries of the
+	 * colour table as fit. The palette index for each colour table entry is 
+	 * written to the given array.
+	 */
+	static IndexColorModel createPalette(HeatChartSpec spec, boolean alpha, byte[] paletteIndices) {
+		ColourMap colourMap = spec.colourMap;
+		Color[] components = {spec.backgroundColour, spec.titleColour, spec.axisColour, spec.axisLabelColour, spec.axisValuesColour};
+		
+		int noSteps = Math.min(colourMap.size(), 256 - components.length);
+		int[] palette = new int[components.length + noSteps];
+		
+		for (int i=0; i<components.length; i++) {
+			palette[i] = alpha ? components[i].getRGB() : (components[i].getRGB() | 0xFF000000);
+		}
+		
+		// Spread the colour table over the available steps, rounding each way.
+		int last = colourMap.size() - 1;
+		for (int i=0; i<noSteps; i++) {
+			int position = (noSteps == 1) ? 0 : (int) (((long) i * last + (noSteps - 1) / 2) / (noSteps - 1));
+			palette[components.length + i] = colourMap.getColour(position);
+		}
+		for (int i=0; i<paletteIndices.length; i++) {
+			int step = (last == 0) ? 0 : (int) (((long) i * (noSteps - 1) + last / 2) / last);
+			paletteIndices[i] = (byte) (components.length + step);
+		}
+		
+		return new IndexColorModel(8, palette.length, palette, 0, alpha, -1, DataBuffer.TYPE_BYTE);
+	}
+	
+	/*
+	 * Draws the x-axis label string if it is not null.
+	 */
+	private static void drawXLabel(HeatChartSpec spec, Graphics2D chartGraphics, ChartLayout layout) {
+		if (spec.xAxisLabel != null) {
+			// Strings are drawn from the baseline position of the leftmost char.
+			int yPosXAxisLabel = layout.chartSize.height - (spec.margin / 2) - layout.xAxisLabelDescent;
+			//TODO This will need to be updated if the y-axis values/label can be moved to the right.
+			int xPosXAxisLabel = layout.heatMapC.x - (layout.xAxisLabelSize.width / 2);
+			
+			chartGraphics.setFont(spec.axisLabelsFont);
+			chartGraphics.setColor(spec.axisLabelColour);
+			chartGraphics.drawString(spec.xAxisLabel, xPosXAxisLabel, yPosXAxisLabel);
+		}
+	}
+	
+	/*
+	 * Draws the y-axis label string if it is not null.
+	 */
+	private static void drawYLabel(HeatChartSpec spec, Graphics2D chartGraphics, ChartLayout layout) {
+		if (spec.yAxisLabel != null) {
+			// Strings are drawn from the baseline position of the leftmost char.
+			int yPosYAxisLabel = layout.heatMapC.y + (layout.yAxisLabelSize.width / 2);
+			int xPosYAxisLabel = (spec.margin / 2) + layout.yAxisLabelAscent;
+			
+			chartGraphics.setFont(spec.axisLabelsFont);
+			chartGraphics.setColor(spec.axisLabelColour);
+			
+			// Create 270 degree rotated transform.
+			AffineTransform transform = chartGraphics.getTransform();
+			AffineTransform originalTransform = (AffineTransform) transform.clone();
+			transform.rotate(Math.toRadians(270), xPosYAxisLabel, yPosYAxisLabel);
+			chartGraphics.setTransform(transform);
+			
+			// Draw string.
+			chartGraphics.drawString(spec.yAxisLabel, xPosYAxisLabel, yPosYAxisLabel);
+			
+			// Revert to original transform before rotation.
+			chartGraphics.setTransform(originalTransform);
+		}
+	}
+	
+	/*
+	 * Draws the bars of the x-axis and y-axis.
+	 */
+	private static void drawAxisBars(HeatChartSpec spec, Graphics2D chartGraphics, ChartLayout layout) {
+		if (spec.axisThickness > 0) {
+			chartGraphics.setColor(spec.axisColour);
+			
+			// Draw x-axis.
+			int x = layout.heatMapTL.x - spec.axisThickness;
+			int y = layout.heatMapBR.y;
+			int width = layout.heatMapSize.width + spec.axisThickness;
+			int height = spec.axisThickness;
+			chartGraphics.fillRect(x, y, width, height);
+			
+			// Draw y-axis.
+			x = layout.heatMapTL.x - spec.axisThickness;
+			y = layout.heatMapTL.y;
+			width = spec.axisThickness;
+			height = layout.heatMapSize.height;
+			chartGraphics.fillRect(x, y, width, height);
+		}
+	}
+	
+	/*
+	 * Draws the x-values onto the x-axis if showXAxisValues is set to true. 
+	 * The text and widths of the values are those measured for the layout.
+	 */
+	private static void drawXValues(HeatChartSpec spec, Graphics2D chartGraphics, ChartLayout layout) {
+		if (!spec.showXAxisValues) {
+			return;
+		}
+		
+		chartGraphics.setColor(spec.axisValuesColour);
+		chartGraphics.setFont(spec.axisValuesFont);
+		
+		String[] xValueStrings = layout.xValueStrings;
+		for (int i=0; i<xValueStrings.length; i++) {
+			if (i % spec.xAxisValuesFrequency != 0) {
+				continue;
+			}
+			
+			String xValueStr = xValueStrings[i];
+			int valueWidth = layout.xValueWidths[i];
+			
+			if (spec.xValuesHorizontal) {
+				// Draw the value with whatever font is now set.
+				int valueXPos = (i * spec.cellSize.width) + ((spec.cellSize.width / 2) - (valueWidth / 2));
+				valueXPos += layout.heatMapTL.x;
+				int valueYPos = layout.heatMapBR.y + layout.xAxisValuesAscent + 1;
+				
+				chartGraphics.drawString(xValueStr, valueXPos, valueYPos);
+			} else {
+				int valueXPos = layout.heatMapTL.x + (i * spec.cellSize.width) + ((spec.cellSize.width / 2) + (layout.xAxisValuesHeight / 2));
+				int valueYPos = layout.heatMapBR.y + spec.axisThickness + valueWidth;
+				
+				// Create 270 degree rotated transform.
+				AffineTransform transform = chartGraphics.getTransform();
+				AffineTransform originalTransform = (AffineTransform) transform.clone();
+				transform.rotate(Math.toRadians(270), valueXPos, valueYPos);
+				chartGraphics.setTransform(transform);
+				
+				// Draw the string.
+				chartGraphics.drawString(xValueStr, valueXPos, valueYPos);
+				
+				// Revert to original transform before rotation.
+				chartGraphics.setTransform(originalTransform);
+			}
+		}
+	}
+	
+	/*
+	 * Draws the y-values of the given range of rows onto the y-axis if 
+	 * showYAxisValues is set to true. The text and widths of the values are 
+	 * those measured for the layout.
+	 */
+	private static void drawYValues(HeatChartSpec spec, Graphics2D chartGraphics, ChartLayout layout, int fromRow, int toRow) {
+		if (!spec.showYAxisValues) {
+			return;
+		}
+		
+		chartGraphics.setColor(spec.axisValuesColour);
+		chartGraphics.setFont(spec.axisValuesFont);
+		
+		String[] yValueStrings = layout.yValueStrings;
+		for (int i=fromRow; i<Math.min(toRow, yValueStrings.length); i++) {
+			if (i % spec.yAxisValuesFrequency != 0) {
+				continue;
+			}
+			
+			String yValueStr = yValueStrings[i];
+			int valueWidth = layout.yValueWidths[i];
+			
+			if (spec.yValuesHorizontal) {
+				// Draw the value with whatever font is now set.
+				int valueXPos = spec.margin + layout.yAxisLabelSize.height + (layout.yAxisValuesWidthMax - valueWidth);
+				int valueYPos = layout.heatMapTL.y + (i * spec.cellSize.height) + (spec.cellSize.height/2) + (layout.yAxisValuesAscent/2);
+				
+				chartGraphics.drawString(yValueStr, valueXPos, valueYPos);
+			} else {
+				int valueXPos = spec.margin + layout.yAxisLabelSize.height + layout.yAxisValuesAscent;
+				int valueYPos = layout.heatMapTL.y + (i * spec.cellSize.height) + (spec.cellSize.height/2) + (valueWidth/2);
+				
+				// Create 270 degree rotated transform.
+				AffineTransform transform = chartGraphics.getTransform();
+				AffineTransform originalTransform = (AffineTransform) transform.clone();
+				transform.rotate(Math.toRadians(270), valueXPos, valueYPos);
+				chartGraphics.setTransform(transform);
+				
+				// Draw the string.
+				chartGraphics.drawString(yValueStr, valueXPos, valueYPos);
+				
+				// Revert to original transform before rotation.
+				chartGraphics.setTransform(originalTransform);
+			}
+		}
+	}
+	
+	/*
+	 * Fills the pixels of a single cell of the heat map with the colour of 
+	 * its z-value, as a palette index if palette indices are given.
+	 */
+	static void drawCell(ColourMap colourMap, DataBuffer pixels, byte[] paletteIndices, int scanline, ChartLayout layout, int row, int column, double value, double low, double high) {
+		int cellWidth = layout.cellWidth;
+		int offset = ((layout.heatMapTL.y + (row * layout.cellHeight)) * scanline) + layout.heatMapTL.x + (column * cellWidth);
+		
+		if (paletteIndices != null) {
+			byte[] indexedPixels = ((DataBufferByte) pixels).getData();
+			byte index = paletteIndices[colourMap.getColourIndex(value, low, high)];
+			for (int i=0; i<layout.cellHeight; i++) {
+				Arrays.fill(indexedPixels, offset, offset + cellWidth, index);
+				offset += scanline;
+			}
+		} else {
+			int[] rgbPixels = ((DataBufferInt) pixels).getData();
+			int colour = colourMap.getCellColour(value, low, high);
+			for (int i=0; i<layout.cellHeight; i++) {
+				Arrays.fill(rgbPixels, offset, offset + cellWidth, colour);
+				offset += scanline;
+			}
+		}
+	}
+	
+	/*
+	 * Encodes the chart image to the given stream, reporting how long that 
+	 * took and how many bytes were written if there is a render listener.
+	 */
+	void encodeChart(BufferedImage chart, ChartEncoder encoder, OutputStream out) throws IOException {
+		ChartEncodeEvent event = new ChartEncodeEvent();
+		if (listener == null && !event.isEnabled()) {
+			encoder.encode(chart, out);
+			return;
+		}
+		
+		long start = System.nanoTime();
+		event.begin();
+		CountingOutputStream counter = new CountingOutputStream(out);
+		encoder.encode(chart, counter);
+		event.end();
+		
+		if (listener != null) {
+			listener.chartEncoded(System.nanoTime() - start, counter.getCount());
+		}
+		if (event.shouldCommit()) {
+			event.format = getFormatName(encoder);
+			event.width = chart.getWidth();
+			event.height = chart.getHeight();
+			event.bytes = counter.getCount();
+			event.commit();
+		}
+	}
+	
+	/*
+	 * Returns the name of the image format that the given encoder writes, 
+	 * for recording with events.
+	 */
+	private static String getFormatName(ChartEncoder encoder) {
+		if (encoder instanceof ImageIOEncoder) {
+			return ((ImageIOEncoder) encoder).getFormat();
+		} else if (encoder instanceof PngEncoder) {
+			return "png";
+		}
+		return encoder.getClass().getName();
+	}
+	
+	/*
+	 * Reports the generation of a chart with the given layout, which began at
+	 * the given time, to the listener, and records it if flight recording of
+	 * the event is enabled and it took long enough.
+	 */
+	void chartRendered(HeatChartSpec spec, ChartRenderEvent event, long start, ChartLayout layout, boolean alpha) {
+		if (listener != null) {
+			listener.chartDrawn(System.nanoTime() - start, (long) layout.chartSize.width * layout.chartSize.height);
+		}
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.width = layout.chartSize.width;
+			event.height = layout.chartSize.height;
+			event.rows = layout.rows;
+			event.columns = layout.columns;
+			event.cells = (long) layout.rows * layout.columns;
+			event.colourScale = spec.colourScale;
+			event.indexedColour = spec.indexedColour;
+			event.alpha = alpha;
+			event.commit();
+		}
+	}
+	
+}
@@ -0,0 +1,447 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.*;
+
+/**
+ * An immutable snapshot of everything needed to draw a chart: a reference to 
+ * the z-values and a copy of every other setting of a {@link HeatChart}, as 
+ * returned by <code>HeatChart.getSpec()</code>. Changes made to the chart 
+ * afterwards do not affect the spec.
+ * 
+ * <p>
+ * A spec is drawn by a {@link HeatChartRenderer}, which keeps all the state 
+ * of a render to itself, so any number of threads may render the same spec 
+ * at once without locking. The layout of the chart is measured by the first
+ * render and reused by the rest. The z-values are not copied, so they must 
+ * not be changed while a render is in progress.
+ * 
+ * @see HeatChartRenderer
+ * @since 0.6
+ */
+public final class HeatChartSpec {
+
+	// x, y, z data values and the range of z-values.
+	final HeatMatrix zValues;
+	final double lowValue;
+	final double highValue;
+	final Object[] xValues;
+	final Object[] yValues;
+	
+	final boolean xValuesHorizontal;
+	final boolean yValuesHorizontal;
+	
+	// General chart settings.
+	final Dimension cellSize;
+	final int margin;
+	final Color backgroundColour;
+	
+	// Title settings.
+	final String title;
+	final Font titleFont;
+	final Color titleColour;
+	
+	// Axis settings.
+	final int axisThickness;
+	final Color axisColour;
+	final Font axisLabelsFont;
+	final Color axisLabelColour;
+	final String xAxisLabel;
+	final String yAxisLabel;
+	final Font axisValuesFont;
+	final Color axisValuesColour;
+	final int xAxisValuesFrequency;
+	final int yAxisValuesFrequency;
+	final boolean showXAxisValues;
+	final boolean showYAxisValues;
+	
+	// Heat map colour and size settings.
+	final Color highValueColour;
+	final Color lowValueColour;
+	final double colourScale;
+	final Dimension maxHeatMapSize;
+	final Aggregation downsampleAggregation;
+	final boolean indexedColour;
+	
+	// Mapping from z-values to the colours of cells.
+	final ColourMap colourMap;
+	
+	// Measurements of the chart, made by the first render that needs them.
+	volatile ChartLayout layout;
+	
+	/*
+	 * Takes a snapshot of the settings of the given chart, starting from the
+	 * given layout, which may be null if the chart has not been measured.
+	 */
+	HeatChartSpec(HeatChart chart, ChartLayout layout) {
+		this.zValues = chart.getZMatrix();
+		this.lowValue = chart.getLowValue();
+		this.highValue = chart.getHighValue();
+		this.xValues = chart.getXValues().clone();
+		this.yValues = chart.getYValues().clone();
+		this.xValuesHorizontal = chart.isXValuesHorizontal();
+		this.yValuesHorizontal = chart.isYValuesHorizontal();
+		this.cellSize = new Dimension(chart.getCellSize());
+		this.margin = chart.getChartMargin();
+		this.backgroundColour = chart.getBackgroundColour();
+		this.title = chart.getTitle();
+		this.titleFont = chart.getTitleFont();
+		this.titleColour = chart.getTitleColour();
+		this.axisThickness = chart.getAxisThickness();
+		this.axisColour = chart.getAxisColour();
+		this.axisLabelsFont = chart.getAxisLabelsFont();
+		this.axisLabelColour = chart.getAxisLabelColour();
+		this.xAxisLabel = chart.getXAxisLabel();
+		this.yAxisLabel = chart.getYAxisLabel();
+		this.axisValuesFont = chart.getAxisValuesFont();
+		this.axisValuesColour = chart.getAxisValuesColour();
+		this.xAxisValuesFrequency = chart.getXAxisValuesFrequency();
+		this.yAxisValuesFrequency = chart.getYAxisValuesFrequency();
+		this.showXAxisValues = chart.isShowXAxisValues();
+		this.showYAxisValues = chart.isShowYAxisValues();
+		this.highValueColour = chart.getHighValueColour();
+		this.lowValueColour = chart.getLowValueColour();
+		this.colourScale = chart.getColourScale();
+		this.maxHeatMapSize = copy(chart.getMaxHeatMapSize());
+		this.downsampleAggregation = chart.getDownsampleAggregation();
+		this.indexedColour = chart.isIndexedColour();
+		this.colourMap = chart.getColourMap();
+		this.layout = layout;
+	}
+	
+	/*
+	 * Returns a copy of the given dimension, or null if it is null.
+	 */
+	private static Dimension copy(Dimension dimension) {
+		return (dimension == null) ? null : new Dimension(dimension);
+	}
+
+	/**
+	 * Returns the matrix of z-values, which is referenced rather than copied.
+	 * 
+	 * @return the matrix of z-values, which is referenced rather than copied.
+	 * @see HeatChart#getZMatrix()
+	 */
+	public HeatMatrix getZMatrix() {
+		return zValues;
+	}
+	
+	/**
+	 * Returns the minimum possible z-value.
+	 * 
+	 * @return the minimum possible z-value.
+	 * @see HeatChart#getLowValue()
+	 */
+	public double getLowValue() {
+		return lowValue;
+	}
+	
+	/**
+	 * Returns the maximum possible z-value.
+	 * 
+	 * @return the maximum possible z-value.
+	 * @see HeatChart#getHighValue()
+	 */
+	public double getHighValue() {
+		return highValue;
+	}
+	
+	/**
+	 * Returns a copy of the x-values.
+	 * 
+	 * @return a copy of the x-values.
+	 * @see HeatChart#getXValues()
+	 */
+	public Object[] getXValues() {
+		return xValues.clone();
+	}
+	
+	/**
+	 * Returns a copy of the y-values.
+	 * 
+	 * @return a copy of the y-values.
+	 * @see HeatChart#getYValues()
+	 */
+	public Object[] getYValues() {
+		return yValues.clone();
+	}
+	
+	/**
+	 * Returns whether the x-values are drawn horizontally.
+	 * 
+	 * @return whether the x-values are drawn horizontally.
+	 * @see HeatChart#isXValuesHorizontal()
+	 */
+	public boolean isXValuesHorizontal() {
+		return xValuesHorizontal;
+	}
+	
+	/**
+	 * Returns whether the y-values are drawn horizontally.
+	 * 
+	 * @return whether the y-values are drawn horizontally.
+	 * @see HeatChart#isYValuesHorizontal()
+	 */
+	public boolean isYValuesHorizontal() {
+		return yValuesHorizontal;
+	}
+	
+	/**
+	 * Returns a copy of the size of each cell in pixels.
+	 * 
+	 * @return a copy of the size of each cell in pixels.
+	 * @see HeatChart#getCellSize()
+	 */
+	public Dimension getCellSize() {
+		return new Dimension(cellSize);
+	}
+	
+	/**
+	 * Returns the size of the margin around the chart in pixels.
+	 * 
+	 * @return the size of the margin around the chart in pixels.
+	 * @see HeatChart#getChartMargin()
+	 */
+	public int getChartMargin() {
+		return margin;
+	}
+	
+	/**
+	 * Returns the background colour of the chart.
+	 * 
+	 * @return the background colour of the chart.
+	 * @see HeatChart#getBackgroundColour()
+	 */
+	public Color getBackgroundColour() {
+		return backgroundColour;
+	}
+	
+	/**
+	 * Returns the title of the chart, or <tt>null</tt> for none.
+	 * 
+	 * @return the title of the chart, or <tt>null</tt> for none.
+	 * @see HeatChart#getTitle()
+	 */
+	public String getTitle() {
+		return title;
+	}
+	
+	/**
+	 * Returns the font of the title.
+	 * 
+	 * @return the font of the title.
+	 * @see HeatChart#getTitleFont()
+	 */
+	public Font getTitleFont() {
+		return titleFont;
+	}
+	
+	/**
+	 * Returns the colour of the title.
+	 * 
+	 * @return the colour of the title.
+	 * @see HeatChart#getTitleColour()
+	 */
+	public Color getTitleColour() {
+		return titleColour;
+	}
+	
+	/**
+	 * Returns the thickness of the axis bars in pixels.
+	 * 
+	 * @return the thickness of the axis bars in pixels.
+	 * @see HeatChart#getAxisThickness()
+	 */
+	public int getAxisThickness() {
+		return axisThickness;
+	}
+	
+	/**
+	 * Returns the colour of the axis bars.
+	 * 
+	 * @return the colour of the axis bars.
+	 * @see HeatChart#getAxisColour()
+	 */
+	public Color getAxisColour() {
+		return axisColour;
+	}
+	
+	/**
+	 * Returns the font of the axis labels.
+	 * 
+	 * @return the font of the axis labels.
+	 * @see HeatChart#getAxisLabelsFont()
+	 */
+	public Font getAxisLabelsFont() {
+		return axisLabelsFont;
+	}
+	
+	/**
+	 * Returns the colour of the axis labels.
+	 * 
+	 * @return the colour of the axis labels.
+	 * @see HeatChart#getAxisLabelColour()
+	 */
+	public Color getAxisLabelColour() {
+		return axisLabelColour;
+	}
+	
+	/**
+	 * Returns the x-axis label, or <tt>null</tt> for none.
+	 * 
+	 * @return the x-axis label, or <tt>null</tt> for none.
+	 * @see HeatChart#getXAxisLabel()
+	 */
+	public String getXAxisLabel() {
+		return xAxisLabel;
+	}
+	
+	/**
+	 * Returns the y-axis label, or <tt>null</tt> for none.
+	 * 
+	 * @return the y-axis label, or <tt>null</tt> for none.
+	 * @see HeatChart#getYAxisLabel()
+	 */
+	public String getYAxisLabel() {
+		return yAxisLabel;
+	}
+	
+	/**
+	 * Returns the font of the axis values.
+	 * 
+	 * @return the font of the axis values.
+	 * @see HeatChart#getAxisValuesFont()
+	 */
+	public Font getAxisValuesFont() {
+		return axisValuesFont;
+	}
+	
+	/**
+	 * Returns the colour of the axis values.
+	 * 
+	 * @return the colour of the axis values.
+	 * @see HeatChart#getAxisValuesColour()
+	 */
+	public Color getAxisValuesColour() {
+		return axisValuesColour;
+	}
+	
+	/**
+	 * Returns how often an x-value is drawn.
+	 * 
+	 * @return how often an x-value is drawn.
+	 * @see HeatChart#getXAxisValuesFrequency()
+	 */
+	public int getXAxisValuesFrequency() {
+		return xAxisValuesFrequency;
+	}
+	
+	/**
+	 * Returns how often a y-value is drawn.
+	 * 
+	 * @return how often a y-value is drawn.
+	 * @see HeatChart#getYAxisValuesFrequency()
+	 */
+	public int getYAxisValuesFrequency() {
+		return yAxisValuesFrequency;
+	}
+	
+	/**
+	 * Returns whether the x-values are drawn.
+	 * 
+	 * @return whether the x-values are drawn.
+	 * @see HeatChart#isShowXAxisValues()
+	 */
+	public boolean isShowXAxisValues() {
+		return showXAxisValues;
+	}
+	
+	/**
+	 * Returns whether the y-values are drawn.
+	 * 
+	 * @return whether the y-values are drawn.
+	 * @see HeatChart#isShowYAxisValues()
+	 */
+	public boolean isShowYAxisValues() {
+		return showYAxisValues;
+	}
+	
+	/**
+	 * Returns the colour of the highest z-values.
+	 * 
+	 * @return the colour of the highest z-values.
+	 * @see HeatChart#getHighValueColour()
+	 */
+	public Color getHighValueColour() {
+		return highValueColour;
+	}
+	
+	/**
+	 * Returns the colour of the lowest z-values.
+	 * 
+	 * @return the colour of the lowest z-values.
+	 * @see HeatChart#getLowValueColour()
+	 */
+	public Color getLowValueColour() {
+		return lowValueColour;
+	}
+	
+	/**
+	 * Returns the colour scale.
+	 * 
+	 * @return the colour scale.
+	 * @see HeatChart#getColourScale()
+	 */
+	public double getColourScale() {
+		return colourScale;
+	}
+	
+	/**
+	 * Returns a copy of the largest size of the heat map before it is downsampled, or <tt>null</tt> for no limit.
+	 * 
+	 * @return a copy of the largest size of the heat map before it is downsampled, or <tt>null</tt> for no limit.
+	 * @see HeatChart#getMaxHeatMapSize()
+	 */
+	public Dimension getMaxHeatMapSize() {
+		return copy(maxHeatMapSize);
+	}
+	
+	/**
+	 * Returns how blocks of cells are combined when downsampling.
+	 * 
+	 * @return how blocks of cells are combined when downsampling.
+	 * @see HeatChart#getDownsampleAggregation()
+	 */
+	public Aggregation getDownsampleAggregation() {
+		return downsampleAggregation;
+	}
+	
+	/**
+	 * Returns whether the chart is generated with a colour palette.
+	 * 
+	 * @return whether the chart is generated with a colour palette.
+	 * @see HeatChart#isIndexedColour()
+	 */
+	public boolean isIndexedColour() {
+		return indexedColour;
+	}
+	
+}
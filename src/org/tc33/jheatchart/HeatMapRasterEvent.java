@@ -0,0 +1,53 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import jdk.jfr.*;
+
+/*
+ * Flight recorder event for colouring the cells of all or a band of the 
+ * heat map and writing them into the chart image.
+ */
+@Name("org.tc33.jheatchart.HeatMapRaster")
+@Label("Heat Map Raster")
+@Category("JHeatChart")
+@Description("Colouring and writing the cells of a heat map")
+final class HeatMapRasterEvent extends Event {
+
+	@Label("First Row")
+	int fromRow;
+	
+	@Label("Rows")
+	int rows;
+	
+	@Label("Columns")
+	int columns;
+	
+	@Label("Cell Count")
+	long cells;
+	
+	@Label("Pixel Count")
+	long pixels;
+	
+	@Label("Parallel")
+	@Description("Whether a render executor was set")
+	boolean parallel;
+	
+}
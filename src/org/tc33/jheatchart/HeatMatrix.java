@@ -0,0 +1,76 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+/**
+ * A <code>HeatMatrix</code> is a rectangular grid of z-values that can be 
+ * displayed by a {@link HeatChart}. Each row of the matrix is one row of 
+ * cells in the heat map, or all the z-values for one y-value, and each column
+ * is all the z-values for one x-value.
+ * 
+ * <p>
+ * The chart reads its z-values a whole row at a time with 
+ * <code>getRow(int, double[])</code>, so implementations are free to store 
+ * their values in whatever layout suits the producer of the data, without the
+ * chart needing a copy of them as a <tt>double[][]</tt>.
+ * 
+ * @see ArrayHeatMatrix
+ * @see FlatHeatMatrix
+ * @since 0.6
+ */
+public interface HeatMatrix {
+
+	/**
+	 * Returns the number of rows of z-values in the matrix.
+	 * 
+	 * @return the number of rows.
+	 */
+	int getRowCount();
+	
+	/**
+	 * Returns the number of columns of z-values in the matrix. Every row has
+	 * this number of z-values.
+	 * 
+	 * @return the number of columns.
+	 */
+	int getColumnCount();
+	
+	/**
+	 * Returns the z-value at the given row and column of the matrix.
+	 * 
+	 * @param row the index of the row, from 0 to <code>getRowCount()-1</code>.
+	 * @param column the index of the column, from 0 to 
+	 * <code>getColumnCount()-1</code>.
+	 * @return the z-value at the given position.
+	 */
+	double get(int row, int column);
+	
+	/**
+	 * Copies all the z-values of one row of the matrix into the start of the 
+	 * given array, which must have at least <code>getColumnCount()</code> 
+	 * elements.
+	 * 
+	 * @param row the index of the row to copy, from 0 to 
+	 * <code>getRowCount()-1</code>.
+	 * @param dest the array to copy the row of z-values into.
+	 */
+	void getRow(int row, double[] dest);
+	
+}
@@ -0,0 +1,265 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A <code>HeatTileRenderer</code> renders single tiles of a 
+ * {@link HeatChart}'s heat map on demand, straight from its z-values, for 
+ * viewers that request tiles as they are needed rather than from a 
+ * pregenerated {@link TilePyramid}. Tiles use the same zoom levels, 
+ * coordinates and appearance as those of a <code>TilePyramid</code> with the
+ * same settings.
+ * 
+ * <p>
+ * Encoded tiles are kept in a cache of bounded size, from which the least 
+ * recently used tiles are discarded. Cached tiles are keyed on the chart's 
+ * data version, its low and high values and colour settings, and the tile 
+ * coordinates, so changing any of them causes tiles to be rendered afresh, 
+ * while the tiles of the old settings age out of the cache.
+ * 
+ * <p>
+ * Tiles may be requested from multiple threads at once. The chart's 
+ * settings should not be changed while a tile is being rendered.
+ * 
+ * @since 0.6
+ */
+public class HeatTileRenderer {
+
+	private final HeatChart chart;
+	private final int tileSize;
+	private final ChartEncoder encoder;
+	private final Aggregation aggregation;
+	
+	// Encoded tiles, in order of least recent use.
+	private final Map<TileKey, byte[]> cache;
+	
+	/**
+	 * Constructs a renderer of 256 pixel PNG tiles of the given chart's heat 
+	 * map, aggregated with the chart's downsample aggregation, which caches up
+	 * to 1024 tiles.
+	 * 
+	 * @param chart the chart whose z-values and colour settings to use.
+	 */
+	public HeatTileRenderer(HeatChart chart) {
+		this(chart, 256, new PngEncoder(), chart.getDownsampleAggregation(), 1024);
+	}
+	
+	/**
+	 * Constructs a renderer of tiles of the given chart's heat map.
+	 * 
+	 * @param chart the chart whose z-values and colour settings to use.
+	 * @param tileSize the width and height of each tile in pixels, which must
+	 * be even.
+	 * @param encoder the encoder to encode tiles with, which must be safe for 
+	 * use from multiple threads if tiles are requested from multiple threads.
+	 * @param aggregation the aggregation used to combine blocks of z-values 
+	 * for the zoom levels above the deepest.
+	 * @param maxCachedTiles the most encoded tiles to keep in the cache, 
+	 * which may be 0 to disable caching.
+	 */
+	public HeatTileRenderer(HeatChart chart, int tileSize, ChartEncoder encoder, Aggregation aggregation, final int maxCachedTiles) {
+		if (tileSize < 2 || tileSize % 2 != 0) {
+			throw new IllegalArgumentException("Tile size must be a positive even number: " + tileSize);
+		}
+		
+		this.chart = chart;
+		this.tileSize = tileSize;
+		this.encoder = encoder;
+		this.aggregation = aggregation;
+		
+		this.cache = new LinkedHashMap<TileKey, byte[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<TileKey, byte[]> eldest) {
+				return size() > maxCachedTiles;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the width and height of each tile in pixels.
+	 * 
+	 * @return the size of the tiles.
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	/**
+	 * Returns the deepest zoom level, at which each z-value is one pixel. 
+	 * Zoom levels run from 0 to this level inclusive.
+	 * 
+	 * @return the deepest zoom level for the chart's current z-values.
+	 */
+	public int getMaxZoom() {
+		return Tiles.getMaxZoom(chart.getZMatrix(), tileSize);
+	}
+	
+	/**
+	 * Returns the encoded tile at the given zoom level and position, from the
+	 * cache if it has been rendered with the current z-values and settings, 
+	 * or rendered from the z-values otherwise. Rendering a tile reads only 
+	 * the z-values it covers, which at the lower zoom levels may be many.
+	 * 
+	 * @param zoom the zoom level of the tile, from 0 to the maximum zoom.
+	 * @param x the column of the tile within its zoom level.
+	 * @param y the row of the tile within its zoom level.
+	 * @return the encoded tile, or <tt>null</tt> if the tile lies entirely 
+	 * outside the z-values. The returned array must not be modified.
+	 * @throws IOException if the tile cannot be encoded.
+	 */
+	public byte[] getTile(int zoom, int x, int y) throws IOException {
+		HeatMatrix data = chart.getZMatrix();
+		int maxZoom = Tiles.getMaxZoom(data, tileSize);
+		if (zoom < 0 || zoom > maxZoom) {
+			throw new IllegalArgumentException("Zoom level must be from 0 to " + maxZoom + ": " + zoom);
+		}
+		
+		long blockSize = Tiles.getBlockSize(zoom, maxZoom);
+		long fromRow = (long) y * tileSize * blockSize;
+		long fromColumn = (long) x * tileSize * blockSize;
+		if (x < 0 || y < 0 || fromRow >= data.getRowCount() || fromColumn >= data.getColumnCount()) {
+			return null;
+		}
+		
+		TileKey key = new TileKey(chart, zoom, x, y);
+		synchronized (cache) {
+			byte[] tile = cache.get(key);
+			if (tile != null) {
+				return tile;
+			}
+		}
+		
+		// Rendered outside the lock, so other tiles can be served meanwhile.
+		byte[] tile = renderTile(data, blockSize, (int) fromRow, (int) fromColumn, key.low, key.high);
+		synchronized (cache) {
+			cache.put(key, tile);
+		}
+		return tile;
+	}
+	
+	/**
+	 * Returns how many encoded tiles are currently cached.
+	 * 
+	 * @return the number of cached tiles.
+	 */
+	public int getCachedTileCount() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+	
+	/**
+	 * Discards all cached tiles. This is needed only if the z-values are 
+	 * changed in place, without the chart's data version changing.
+	 */
+	public void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+	
+	/*
+	 * Aggregates each block of z-values covered by a pixel of the tile, 
+	 * reading the z-values a row at a time, and encodes the tile.
+	 */
+	private byte[] renderTile(HeatMatrix data, long blockSize, int fromRow, int fromColumn, double low, double high) throws IOException {
+		double[] aggregates = new double[tileSize * tileSize];
+		int[] counts = new int[tileSize * tileSize];
+		Arrays.fill(aggregates, aggregation.initialValue());
+		
+		int toRow = (int) Math.min(data.getRowCount(), fromRow + (tileSize * blockSize));
+		int toColumn = (int) Math.min(data.getColumnCount(), fromColumn + (tileSize * blockSize));
+		
+		for (int row=fromRow; row<toRow; row++) {
+			int offset = (int) ((row - fromRow) / blockSize) * tileSize;
+			for (int column=fromColumn; column<toColumn; column++) {
+				double z = data.get(row, column);
+				if (z == z) {
+					int i = offset + (int) ((column - fromColumn) / blockSize);
+					aggregates[i] = aggregation.combine(aggregates[i], z);
+					counts[i]++;
+				}
+			}
+		}
+		
+		return Tiles.encodeTile(chart, encoder, aggregation, tileSize, blockSize, low, high, aggregates, counts);
+	}
+	
+	/*
+	 * Identifies a tile rendered from a particular version of the z-values 
+	 * with particular colour settings.
+	 */
+	private static final class TileKey {
+		
+		final long dataVersion;
+		final double low;
+		final double high;
+		final Color lowValueColour;
+		final Color highValueColour;
+		final double colourScale;
+		final int zoom;
+		final int x;
+		final int y;
+		
+		TileKey(HeatChart chart, int zoom, int x, int y) {
+			this.dataVersion = chart.getDataVersion();
+			this.low = chart.getLowValue();
+			this.high = chart.getHighValue();
+			this.lowValueColour = chart.getLowValueColour();
+			this.highValueColour = chart.getHighValueColour();
+			this.colourScale = chart.getColourScale();
+			this.zoom = zoom;
+			this.x = x;
+			this.y = y;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			
+			TileKey other = (TileKey) obj;
+			return dataVersion == other.dataVersion
+					&& Double.compare(low, other.low) == 0
+					&& Double.compare(high, other.high) == 0
+					&& lowValueColour.equals(other.lowValueColour)
+					&& highValueColour.equals(other.highValueColour)
+					&& Double.compare(colourScale, other.colourScale) == 0
+					&& zoom == other.zoom && x == other.x && y == other.y;
+		}
+		
+		@Override
+		public int hashCode() {
+			int hash = (int) (dataVersion ^ (dataVersion >>> 32));
+			hash = (31 * hash) + Arrays.hashCode(new double[] {low, high, colourScale});
+			hash = (31 * hash) + lowValueColour.hashCode();
+			hash = (31 * hash) + highValueColour.hashCode();
+			hash = (31 * hash) + zoom;
+			hash = (31 * hash) + x;
+			return (31 * hash) + y;
+		}
+	}
+	
+}
@@ -0,0 +1,272 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * A {@link ChartEncoder} which encodes images using the <code>ImageIO</code>
+ * writer for a named image format, such as PNG or JPG. The compression 
+ * quality, and for formats that offer a choice the compression type, can be 
+ * configured.
+ * 
+ * <p>
+ * Looking up a writer from the <code>ImageIO</code> registry is relatively 
+ * slow, so writers are pooled: each thread keeps one writer per format, which
+ * is reset and reused by every encoder of that format used on that thread. 
+ * A thread's writers can be disposed of with <code>releaseWriters()</code>, 
+ * for example before returning the thread to a container's pool.
+ * 
+ * @since 0.6
+ */
+public class ImageIOEncoder implements ChartEncoder {
+
+	/**
+	 * A quality value that leaves the writer's default compression settings
+	 * unchanged.
+	 */
+	public static final float DEFAULT_QUALITY = -1;
+	
+	// Each thread's idle writers, keyed by lower case format name.
+	private static final ThreadLocal<Map<String, ImageWriter>> WRITERS = new ThreadLocal<Map<String, ImageWriter>>() {
+		@Override
+		protected Map<String, ImageWriter> initialValue() {
+			return new HashMap<String, ImageWriter>();
+		}
+	};
+	
+	private final String format;
+	private final boolean alphaSupported;
+	
+	private volatile float quality;
+	private volatile String compressionType;
+	
+	/**
+	 * Constructs an encoder for the given image format, with the writer's 
+	 * default compression settings. 
+	 * 
+	 * @param format the informal name of the image format, such as 
+	 * <tt>"png"</tt> or <tt>"jpg"</tt>.
+	 * @throws IllegalArgumentException if there is no <code>ImageIO</code> 
+	 * writer for the format.
+	 */
+	public ImageIOEncoder(String format) {
+		this(format, DEFAULT_QUALITY);
+	}
+	
+	/**
+	 * Constructs an encoder for the given image format, with the given 
+	 * compression quality.
+	 * 
+	 * @param format the informal name of the image format, such as 
+	 * <tt>"png"</tt> or <tt>"jpg"</tt>.
+	 * @param quality the compression quality from 0.0 to 1.0, or 
+	 * <code>DEFAULT_QUALITY</code>.
+	 * @throws IllegalArgumentException if there is no <code>ImageIO</code> 
+	 * writer for the format.
+	 */
+	public ImageIOEncoder(String format, float quality) {
+		this.format = format.toLowerCase();
+		this.quality = quality;
+		
+		ImageWriter writer = acquireWriter();
+		try {
+			ImageTypeSpecifier alphaType = ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB);
+			this.alphaSupported = writer.getOriginatingProvider().canEncodeImage(alphaType);
+		} finally {
+			releaseWriter(writer);
+		}
+	}
+	
+	/**
+	 * Returns the informal name of the image format written by this encoder.
+	 * 
+	 * @return the image format name.
+	 */
+	public String getFormat() {
+		return format;
+	}
+	
+	/**
+	 * Returns the compression quality used, from 0.0 to 1.0, or 
+	 * <code>DEFAULT_QUALITY</code> if the writer's default is used.
+	 * 
+	 * @return the compression quality.
+	 */
+	public float getQuality() {
+		return quality;
+	}
+	
+	/**
+	 * Sets the compression quality, a value from 0.0 to 1.0 with the meaning 
+	 * defined by the format's writer. For JPG it trades file size for image 
+	 * quality, while for the lossless PNG format it trades file size for 
+	 * encoding speed. It is ignored by formats that do not support compression
+	 * settings.
+	 * 
+	 * <p>
+	 * Defaults to <code>DEFAULT_QUALITY</code>, the writer's default.
+	 * 
+	 * @param quality the compression quality from 0.0 to 1.0, or 
+	 * <code>DEFAULT_QUALITY</code>.
+	 */
+	public void setQuality(float quality) {
+		this.quality = quality;
+	}
+	
+	/**
+	 * Returns the name of the compression type used, or <tt>null</tt> if the 
+	 * writer's default type is used.
+	 * 
+	 * @return the compression type.
+	 */
+	public String getCompressionType() {
+		return compressionType;
+	}
+	
+	/**
+	 * Sets the name of the compression type to use, for formats whose writer 
+	 * offers a choice of compression types. 
+	 * 
+	 * <p>
+	 * Defaults to null, the writer's default type.
+	 * 
+	 * @param compressionType one of the compression types of the format's 
+	 * <code>ImageWriteParam</code>, or <tt>null</tt> for the default.
+	 */
+	public void setCompressionType(String compressionType) {
+		this.compressionType = compressionType;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isAlphaSupported() {
+		return alphaSupported;
+	}
+	
+	/**
+	 * Encodes the given image, writing it to the given stream. The image is 
+	 * encoded in memory as it is written, nothing is written to the file 
+	 * system. The stream is flushed but not closed.
+	 * 
+	 * @param image the chart image to encode.
+	 * @param out the stream to write the encoded image to.
+	 * @throws IOException if the image cannot be encoded or the stream cannot
+	 * be written to.
+	 */
+	public void encode(BufferedImage image, OutputStream out) throws IOException {
+		ImageOutputStream output = new MemoryCacheImageOutputStream(out);
+		try {
+			encode(image, output);
+		} finally {
+			// Flushes to the stream, but leaves it open.
+			output.close();
+		}
+		out.flush();
+	}
+	
+	/**
+	 * Encodes the given image, writing it to the given image output stream, 
+	 * which is not closed.
+	 * 
+	 * @param image the chart image to encode.
+	 * @param output the image output stream to write the encoded image to.
+	 * @throws IOException if the image cannot be encoded or the stream cannot
+	 * be written to.
+	 */
+	public void encode(BufferedImage image, ImageOutputStream output) throws IOException {
+		ImageWriter writer = acquireWriter();
+		try {
+			ImageWriteParam iwp = writer.getDefaultWriteParam();
+			float quality = this.quality;
+			String compressionType = this.compressionType;
+			
+			if ((quality != DEFAULT_QUALITY || compressionType != null) && iwp.canWriteCompressed()) {
+				iwp.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				if (compressionType != null) {
+					iwp.setCompressionType(compressionType);
+				} else if (iwp.getCompressionType() == null) {
+					iwp.setCompressionType(iwp.getCompressionTypes()[0]);
+				}
+				if (quality != DEFAULT_QUALITY) {
+					iwp.setCompressionQuality(quality);
+				}
+			}
+			
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(image, null, null), iwp);
+		} finally {
+			releaseWriter(writer);
+		}
+	}
+	
+	/*
+	 * Takes this thread's idle writer for the format, or looks up a new one 
+	 * if there is none. The writer is removed from the pool while in use, so 
+	 * nested use on one thread gets separate writers.
+	 */
+	private ImageWriter acquireWriter() {
+		ImageWriter writer = WRITERS.get().remove(format);
+		if (writer != null) {
+			return writer;
+		}
+		
+		Iterator<ImageWriter> iter = ImageIO.getImageWritersByFormatName(format);
+		if (!iter.hasNext()) {
+			throw new IllegalArgumentException("No image writer for format: " + format);
+		}
+		return iter.next();
+	}
+	
+	/*
+	 * Resets the writer and returns it to this thread's pool, or disposes of 
+	 * it if the pool already holds a writer for the format.
+	 */
+	private void releaseWriter(ImageWriter writer) {
+		writer.reset();
+		
+		Map<String, ImageWriter> writers = WRITERS.get();
+		if (writers.containsKey(format)) {
+			writer.dispose();
+		} else {
+			writers.put(format, writer);
+		}
+	}
+	
+	/**
+	 * Disposes of all the writers pooled by the current thread. They will be
+	 * looked up again if the thread encodes any further images.
+	 */
+	public static void releaseWriters() {
+		Map<String, ImageWriter> writers = WRITERS.get();
+		for (ImageWriter writer: writers.values()) {
+			writer.dispose();
+		}
+		WRITERS.remove();
+	}
+	
+}
@@ -0,0 +1,232 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link HeatMatrix} backed by a memory-mapped file, for z-values which are
+ * too large to be held on the heap. The file must hold the z-values as raw 
+ * little-endian <tt>doubles</tt> or <tt>floats</tt> in row-major order, with 
+ * no padding between rows.
+ * 
+ * <p>
+ * The file is mapped read-only in regions of whole rows, and the chart reads 
+ * the z-values a row at a time straight from the mapping, so rendering and 
+ * finding the minimum and maximum values stream over the file without an 
+ * on-heap copy of the matrix ever being built. The operating system pages the
+ * file in and out of memory as needed.
+ * 
+ * @since 0.6
+ */
+public class MappedHeatMatrix implements HeatMatrix {
+
+	/**
+	 * The file holds 8 byte double-precision z-values.
+	 */
+	public static final int TYPE_DOUBLE = 8;
+	
+	/**
+	 * The file holds 4 byte single-precision z-values.
+	 */
+	public static final int TYPE_FLOAT = 4;
+	
+	// The largest number of bytes mapped in one region.
+	private static final int MAX_REGION_SIZE = 1 << 30;
+	
+	private final int rows;
+	private final int columns;
+	private final int type;
+	
+	// How many rows are held in each mapped region.
+	private final int rowsPerRegion;
+	
+	// Views of each mapped region, only one of which is used depending on type.
+	private final DoubleBuffer[] doubleRegions;
+	private final FloatBuffer[] floatRegions;
+	
+	/**
+	 * Constructs a matrix by mapping the whole of the given file, which must 
+	 * be at least large enough to hold the given number of rows and columns 
+	 * of z-values.
+	 * 
+	 * @param file the file holding the z-values.
+	 * @param rows the number of rows in the matrix.
+	 * @param columns the number of columns in the matrix.
+	 * @param type the type of the z-values in the file, either 
+	 * <code>TYPE_DOUBLE</code> or <code>TYPE_FLOAT</code>.
+	 * @throws IOException if the file cannot be opened or mapped.
+	 */
+	public MappedHeatMatrix(File file, int rows, int columns, int type) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			// The mapping stays valid after the channel is closed.
+			FileChannel channel = in.getChannel();
+			
+			this.rows = rows;
+			this.columns = columns;
+			this.type = type;
+			this.rowsPerRegion = rowsPerRegion(columns, type);
+			this.doubleRegions = (type == TYPE_DOUBLE) ? new DoubleBuffer[regionCount()] : null;
+			this.floatRegions = (type == TYPE_FLOAT) ? new FloatBuffer[regionCount()] : null;
+			
+			map(channel, 0);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Constructs a matrix by mapping part of the given channel, starting at 
+	 * the given position. The channel must be readable and may be closed once
+	 * the matrix is constructed.
+	 * 
+	 * @param channel the channel of the file holding the z-values.
+	 * @param position the position in the file of the first z-value.
+	 * @param rows the number of rows in the matrix.
+	 * @param columns the number of columns in the matrix.
+	 * @param type the type of the z-values in the file, either 
+	 * <code>TYPE_DOUBLE</code> or <code>TYPE_FLOAT</code>.
+	 * @throws IOException if the channel cannot be mapped.
+	 */
+	public MappedHeatMatrix(FileChannel channel, long position, int rows, int columns, int type) throws IOException {
+		this.rows = rows;
+		this.columns = columns;
+		this.type = type;
+		this.rowsPerRegion = rowsPerRegion(columns, type);
+		this.doubleRegions = (type == TYPE_DOUBLE) ? new DoubleBuffer[regionCount()] : null;
+		this.floatRegions = (type == TYPE_FLOAT) ? new FloatBuffer[regionCount()] : null;
+		
+		map(channel, position);
+	}
+	
+	/*
+	 * Validates the matrix dimensions and returns the number of whole rows 
+	 * that fit in one mapped region.
+	 */
+	private static int rowsPerRegion(int columns, int type) {
+		if (type != TYPE_DOUBLE && type != TYPE_FLOAT) {
+			throw new IllegalArgumentException("Unknown z-value type: " + type);
+		}
+		if (columns < 1) {
+			throw new IllegalArgumentException("Matrix must have at least one row and column.");
+		}
+		
+		long rowSize = (long) columns * type;
+		if (rowSize > MAX_REGION_SIZE) {
+			throw new IllegalArgumentException("Too many columns to map a whole row.");
+		}
+		
+		return (int) (MAX_REGION_SIZE / rowSize);
+	}
+	
+	/*
+	 * Returns the number of regions needed to map all rows.
+	 */
+	private int regionCount() {
+		if (rows < 1) {
+			throw new IllegalArgumentException("Matrix must have at least one row and column.");
+		}
+		
+		return ((rows - 1) / rowsPerRegion) + 1;
+	}
+	
+	/*
+	 * Maps each region of rows of the channel, starting at the given position.
+	 */
+	private void map(FileChannel channel, long position) throws IOException {
+		long rowSize = (long) columns * type;
+		if (channel.size() < position + (rows * rowSize)) {
+			throw new IllegalArgumentException("File is too small for the matrix dimensions.");
+		}
+		
+		int regions = (doubleRegions != null) ? doubleRegions.length : floatRegions.length;
+		for (int i=0; i<regions; i++) {
+			int regionRows = Math.min(rowsPerRegion, rows - (i * rowsPerRegion));
+			long regionPosition = position + (i * rowsPerRegion * rowSize);
+			
+			ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionPosition, regionRows * rowSize);
+			region.order(ByteOrder.LITTLE_ENDIAN);
+			
+			if (type == TYPE_DOUBLE) {
+				doubleRegions[i] = region.asDoubleBuffer();
+			} else {
+				floatRegions[i] = region.asFloatBuffer();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the type of the z-values in the mapped file.
+	 * 
+	 * @return either <code>TYPE_DOUBLE</code> or <code>TYPE_FLOAT</code>.
+	 */
+	public int getType() {
+		return type;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getColumnCount() {
+		return columns;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public double get(int row, int column) {
+		int index = ((row % rowsPerRegion) * columns) + column;
+		if (type == TYPE_DOUBLE) {
+			return doubleRegions[row / rowsPerRegion].get(index);
+		} else {
+			return floatRegions[row / rowsPerRegion].get(index);
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void getRow(int row, double[] dest) {
+		// Only absolute gets are used, so concurrent readers are safe.
+		int index = (row % rowsPerRegion) * columns;
+		if (type == TYPE_DOUBLE) {
+			DoubleBuffer region = doubleRegions[row / rowsPerRegion];
+			for (int i=0; i<columns; i++) {
+				dest[i] = region.get(index + i);
+			}
+		} else {
+			FloatBuffer region = floatRegions[row / rowsPerRegion];
+			for (int i=0; i<columns; i++) {
+				dest[i] = region.get(index + i);
+			}
+		}
+	}
+	
+}
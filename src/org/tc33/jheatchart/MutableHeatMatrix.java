@@ -0,0 +1,43 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+/**
+ * A {@link HeatMatrix} whose z-values can be changed one at a time. A 
+ * {@link HeatChart} holding a mutable matrix can update individual cells 
+ * with <code>updateCell(int, int, double)</code>, repainting only those cells
+ * of a retained chart image rather than generating the whole chart again.
+ * 
+ * @see HeatChart#updateCell(int, int, double)
+ * @since 0.6
+ */
+public interface MutableHeatMatrix extends HeatMatrix {
+
+	/**
+	 * Changes the z-value at the given row and column of the matrix.
+	 * 
+	 * @param row the index of the row, from 0 to <code>getRowCount()-1</code>.
+	 * @param column the index of the column, from 0 to 
+	 * <code>getColumnCount()-1</code>.
+	 * @param value the new z-value.
+	 */
+	void set(int row, int column, double value);
+	
+}
@@ -0,0 +1,513 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.image.IndexColorModel;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/*
+ * Writes a PNG image to a stream one scanline at a time. Scanlines are 
+ * gathered into chunks which are filtered and deflated independently, in 
+ * parallel if an executor is given, and written out as IDAT chunks in order.
+ * Every chunk but the last ends on a sync flush, so the concatenated deflate
+ * output forms a single zlib stream whose checksum is combined from the 
+ * checksums of the chunks.
+ * 
+ * Rows are filtered either adaptively, trying every filter type, or with a
+ * fixed choice suited to the blocks of identical pixels in a heat map: the 
+ * Up filter for a row identical to the one above, which filters to all 
+ * zeros, and otherwise the Sub filter, which filters runs of one colour to 
+ * zeros.
+ * 
+ * Only 8 bit RGB, RGBA and palette images are written. Rows are given as 
+ * unfiltered bytes, 3 or 4 per pixel in RGB(A) order, or 1 palette index.
+ */
+final class PngStreamWriter {
+
+	static final int COLOUR_RGB = 2;
+	static final int COLOUR_PALETTE = 3;
+	static final int COLOUR_RGBA = 6;
+	
+	private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+	
+	// Roughly how many bytes of unfiltered scanlines are deflated per chunk.
+	private static final int CHUNK_BYTES = 1 << 18;
+	
+	private static final int FILTER_NONE = 0;
+	private static final int FILTER_SUB = 1;
+	private static final int FILTER_UP = 2;
+	private static final int FILTER_AVERAGE = 3;
+	private static final int FILTER_PAETH = 4;
+	
+	private final DataOutputStream out;
+	private final int height;
+	private final int bytesPerPixel;
+	private final int rowBytes;
+	private final int level;
+	private final boolean adaptive;
+	private final ExecutorService executor;
+	
+	// Rows per chunk, and most chunks that may be deflating at once.
+	private final int chunkRows;
+	private final int maxPending;
+	
+	// Unfiltered rows of the chunk being gathered, and the row before them.
+	private byte[] chunk;
+	private byte[] previousRow;
+	private int chunkFirstRow;
+	private int row;
+	
+	private final LinkedList<Future<DeflatedChunk>> pending = new LinkedList<Future<DeflatedChunk>>();
+	
+	// Checksum of all the filtered data written so far.
+	private long adler = 1;
+	
+	private final CRC32 crc = new CRC32();
+	
+	/*
+	 * Writes the PNG signature and header. A palette must be given for the 
+	 * palette colour type. A level of Deflater.DEFAULT_COMPRESSION uses the 
+	 * default level, and a null executor deflates on the calling thread.
+	 */
+	PngStreamWriter(OutputStream out, int width, int height, int colourType, IndexColorModel palette, int level, boolean adaptive, ExecutorService executor) throws IOException {
+		this.out = new DataOutputStream(out);
+		this.height = height;
+		this.level = level;
+		this.adaptive = adaptive;
+		this.executor = executor;
+		
+		if (colourType == COLOUR_PALETTE) {
+			bytesPerPixel = 1;
+		} else if (colourType == COLOUR_RGB) {
+			bytesPerPixel = 3;
+		} else {
+			bytesPerPixel = 4;
+		}
+		rowBytes = width * bytesPerPixel;
+		
+		chunkRows = Math.max(1, Math.min(height, CHUNK_BYTES / Math.max(1, rowBytes)));
+		maxPending = 2 * Runtime.getRuntime().availableProcessors();
+		chunk = new byte[chunkRows * rowBytes];
+		previousRow = new byte[rowBytes];
+		
+		this.out.write(SIGNATURE);
+		
+		ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+		DataOutputStream headerData = new DataOutputStream(header);
+		headerData.writeInt(width);
+		headerData.writeInt(height);
+		headerData.writeByte(8);
+		headerData.writeByte(colourType);
+		headerData.writeByte(0);
+		headerData.writeByte(0);
+		headerData.writeByte(0);
+		writeChunk("IHDR", header.toByteArray(), 0, header.size());
+		
+		if (colourType == COLOUR_PALETTE) {
+			writePalette(palette);
+		}
+	}
+	
+	/*
+	 * Returns how many bytes each unfiltered row holds.
+	 */
+	int getRowBytes() {
+		return rowBytes;
+	}
+	
+	/*
+	 * Appends the next row of the image, read from the given offset of the 
+	 * array. The bytes are copied, so the array may be reused straight away.
+	 */
+	void writeRow(byte[] src, int offset) throws IOException {
+		if (row >= height) {
+			throw new IllegalStateException("All " + height + " rows already written");
+		}
+		
+		System.arraycopy(src, offset, chunk, (row - chunkFirstRow) * rowBytes, rowBytes);
+		row++;
+		
+		if (row - chunkFirstRow == chunkRows || row == height) {
+			submitChunk();
+		}
+	}
+	
+	/*
+	 * Writes the remaining chunks and the end of the image. All rows must have
+	 * been written. The stream is flushed but not closed.
+	 */
+	void finish() throws IOException {
+		if (row < height) {
+			throw new IllegalStateException("Only " + row + " of " + height + " rows written");
+		}
+		
+		while (!pending.isEmpty()) {
+			writeDeflated(Tasks.get(pending.removeFirst(), "deflating PNG"));
+		}
+		writeChunk("IEND", new byte[0], 0, 0);
+		out.flush();
+	}
+	
+	/*
+	 * Abandons any chunks that are still being deflated, after a failure.
+	 */
+	void cancel() {
+		for (Future<DeflatedChunk> future: pending) {
+			future.cancel(true);
+		}
+		pending.clear();
+	}
+	
+	/*
+	 * Hands the gathered rows to be deflated, and writes out any earlier 
+	 * chunks that are complete, or the oldest if too many are outstanding.
+	 */
+	private void submitChunk() throws IOException {
+		int rows = row - chunkFirstRow;
+		byte[] lastRow = new byte[rowBytes];
+		System.arraycopy(chunk, (rows - 1) * rowBytes, lastRow, 0, rowBytes);
+		
+		DeflatedChunk task = new DeflatedChunk(chunk, previousRow, rows, rowBytes, bytesPerPixel, level, adaptive, chunkFirstRow == 0, row == height);
+		
+		if (executor == null) {
+			writeDeflated(task.call());
+		} else {
+			pending.addLast(executor.submit(task));
+			while (!pending.isEmpty() && (pending.size() >= maxPending || pending.getFirst().isDone())) {
+				writeDeflated(Tasks.get(pending.removeFirst(), "deflating PNG"));
+			}
+			
+			// The chunk array now belongs to the task.
+			if (row < height) {
+				chunk = new byte[chunkRows * rowBytes];
+			}
+		}
+		
+		previousRow = lastRow;
+		chunkFirstRow = row;
+	}
+	
+	/*
+	 * Writes a deflated chunk as an IDAT chunk, completing the zlib trailer 
+	 * if it is the last.
+	 */
+	private void writeDeflated(DeflatedChunk deflated) throws IOException {
+		adler = combineAdler(adler, deflated.adler, deflated.filteredLength);
+		
+		byte[] data = deflated.data;
+		if (deflated.last) {
+			int end = deflated.length - 4;
+			data[end] = (byte) (adler >>> 24);
+			data[end + 1] = (byte) (adler >>> 16);
+			data[end + 2] = (byte) (adler >>> 8);
+			data[end + 3] = (byte) adler;
+		}
+		writeChunk("IDAT", data, 0, deflated.length);
+	}
+	
+	/*
+	 * Writes the PLTE chunk, and a tRNS chunk if any entry is not opaque.
+	 */
+	private void writePalette(IndexColorModel palette) throws IOException {
+		int size = palette.getMapSize();
+		byte[] rgb = new byte[size * 3];
+		byte[] alpha = new byte[size];
+		int transparent = 0;
+		
+		for (int i=0; i<size; i++) {
+			rgb[i * 3] = (byte) palette.getRed(i);
+			rgb[i * 3 + 1] = (byte) palette.getGreen(i);
+			rgb[i * 3 + 2] = (byte) palette.getBlue(i);
+			alpha[i] = (byte) palette.getAlpha(i);
+			
+			if (alpha[i] != (byte) 255) {
+				transparent = i + 1;
+			}
+		}
+		
+		writeChunk("PLTE", rgb, 0, rgb.length);
+		if (transparent > 0) {
+			writeChunk("tRNS", alpha, 0, transparent);
+		}
+	}
+	
+	private void writeChunk(String type, byte[] data, int offset, int length) throws IOException {
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		
+		crc.reset();
+		crc.update(typeBytes);
+		crc.update(data, offset, length);
+		
+		out.writeInt(length);
+		out.write(typeBytes);
+		out.write(data, offset, length);
+		out.writeInt((int) crc.getValue());
+	}
+	
+	/*
+	 * Returns the Adler-32 checksum of two blocks of data joined together, 
+	 * from the checksums of each and the length of the second.
+	 */
+	static long combineAdler(long adler1, long adler2, long length2) {
+		final long base = 65521;
+		long remainder = length2 % base;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = (remainder * sum1) % base;
+		sum1 += (adler2 & 0xFFFF) + base - 1;
+		sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - remainder;
+		
+		if (sum1 >= base) sum1 -= base;
+		if (sum1 >= base) sum1 -= base;
+		if (sum2 >= (base << 1)) sum2 -= (base << 1);
+		if (sum2 >= base) sum2 -= base;
+		
+		return sum1 | (sum2 << 16);
+	}
+	
+	/*
+	 * Filters and deflates one chunk of rows. The first chunk is preceded by 
+	 * the zlib header, and the last has four bytes reserved for the checksum 
+	 * of the whole stream.
+	 */
+	private static final class DeflatedChunk implements Callable<DeflatedChunk> {
+		
+		private final byte[] rows;
+		private final byte[] previousRow;
+		private final int noRows;
+		private final int rowBytes;
+		private final int bytesPerPixel;
+		private final int level;
+		private final boolean adaptive;
+		private final boolean first;
+		final boolean last;
+		
+		byte[] data;
+		int length;
+		long adler;
+		int filteredLength;
+		
+		DeflatedChunk(byte[] rows, byte[] previousRow, int noRows, int rowBytes, int bytesPerPixel, int level, boolean adaptive, boolean first, boolean last) {
+			this.rows = rows;
+			this.previousRow = previousRow;
+			this.noRows = noRows;
+			this.rowBytes = rowBytes;
+			this.bytesPerPixel = bytesPerPixel;
+			this.level = level;
+			this.adaptive = adaptive;
+			this.first = first;
+			this.last = last;
+		}
+		
+		public DeflatedChunk call() {
+			filteredLength = noRows * (rowBytes + 1);
+			byte[] filtered = new byte[filteredLength];
+			
+			byte[] prior = previousRow;
+			int priorOffset = 0;
+			for (int i=0; i<noRows; i++) {
+				if (adaptive) {
+					filterRow(rows, i * rowBytes, prior, priorOffset, filtered, i * (rowBytes + 1));
+				} else {
+					filterRowFixed(rows, i * rowBytes, prior, priorOffset, filtered, i * (rowBytes + 1));
+				}
+				prior = rows;
+				priorOffset = i * rowBytes;
+			}
+			
+			Adler32 checksum = new Adler32();
+			checksum.update(filtered, 0, filteredLength);
+			adler = checksum.getValue();
+			
+			deflate(filtered);
+			return this;
+		}
+		
+		private void deflate(byte[] filtered) {
+			data = new byte[Math.max(64, filteredLength / 2)];
+			if (first) {
+				writeZlibHeader();
+			}
+			
+			Deflater deflater = new Deflater(level, true);
+			try {
+				deflater.setInput(filtered, 0, filteredLength);
+				if (last) {
+					deflater.finish();
+				}
+				
+				int mode = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+				while (true) {
+					int count = deflater.deflate(data, length, data.length - length, mode);
+					length += count;
+					
+					boolean done = last ? deflater.finished() : (length < data.length && deflater.needsInput());
+					if (done) {
+						break;
+					}
+					if (length == data.length) {
+						data = Arrays.copyOf(data, data.length * 2);
+					}
+				}
+			} finally {
+				deflater.end();
+			}
+			
+			if (last) {
+				// Space for the checksum, filled in once all chunks are done.
+				if (data.length < length + 4) {
+					data = Arrays.copyOf(data, length + 4);
+				}
+				length += 4;
+			}
+		}
+		
+		private void writeZlibHeader() {
+			int compressionInfo = 0x78;
+			int levelFlag;
+			if (level == Deflater.DEFAULT_COMPRESSION || level == 6) {
+				levelFlag = 2;
+			} else if (level <= 1) {
+				levelFlag = 0;
+			} else if (level <= 5) {
+				levelFlag = 1;
+			} else {
+				levelFlag = 3;
+			}
+			
+			int flags = levelFlag << 6;
+			flags += 31 - (((compressionInfo << 8) + flags) % 31);
+			data[0] = (byte) compressionInfo;
+			data[1] = (byte) flags;
+			length = 2;
+		}
+		
+		/*
+		 * Filters one row with the Up filter if it repeats the row above, 
+		 * leaving the destination's zeros in place, or otherwise with the Sub
+		 * filter.
+		 */
+		private void filterRowFixed(byte[] row, int offset, byte[] prior, int priorOffset, byte[] dest, int destOffset) {
+			boolean repeated = true;
+			for (int i=0; i<rowBytes && repeated; i++) {
+				repeated = (row[offset + i] == prior[priorOffset + i]);
+			}
+			
+			if (repeated) {
+				dest[destOffset] = (byte) FILTER_UP;
+				return;
+			}
+			
+			dest[destOffset] = (byte) FILTER_SUB;
+			destOffset++;
+			int start = Math.min(bytesPerPixel, rowBytes);
+			System.arraycopy(row, offset, dest, destOffset, start);
+			for (int i=start; i<rowBytes; i++) {
+				dest[destOffset + i] = (byte) (row[offset + i] - row[offset + i - bytesPerPixel]);
+			}
+		}
+		
+		/*
+		 * Filters one row using whichever filter gives the smallest sum of 
+		 * absolute differences, the heuristic recommended by the PNG 
+		 * specification. The sums for all filters are found in one pass.
+		 */
+		private void filterRow(byte[] row, int offset, byte[] prior, int priorOffset, byte[] dest, int destOffset) {
+			long sumNone = 0, sumSub = 0, sumUp = 0, sumAverage = 0, sumPaeth = 0;
+			
+			// The first pixel has no left neighbour, so a and c are zero.
+			int start = Math.min(bytesPerPixel, rowBytes);
+			for (int i=0; i<start; i++) {
+				int x = row[offset + i] & 0xFF;
+				int b = prior[priorOffset + i] & 0xFF;
+				
+				sumNone += Math.abs((byte) x);
+				sumSub += Math.abs((byte) x);
+				sumUp += Math.abs((byte) (x - b));
+				sumAverage += Math.abs((byte) (x - (b >>> 1)));
+				sumPaeth += Math.abs((byte) (x - b));
+			}
+			for (int i=start; i<rowBytes; i++) {
+				int x = row[offset + i] & 0xFF;
+				int a = row[offset + i - bytesPerPixel] & 0xFF;
+				int b = prior[priorOffset + i] & 0xFF;
+				int c = prior[priorOffset + i - bytesPerPixel] & 0xFF;
+				
+				sumNone += Math.abs((byte) x);
+				sumSub += Math.abs((byte) (x - a));
+				sumUp += Math.abs((byte) (x - b));
+				sumAverage += Math.abs((byte) (x - ((a + b) >>> 1)));
+				sumPaeth += Math.abs((byte) (x - paeth(a, b, c)));
+			}
+			
+			int filter = FILTER_NONE;
+			long best = sumNone;
+			if (sumSub < best) { filter = FILTER_SUB; best = sumSub; }
+			if (sumUp < best) { filter = FILTER_UP; best = sumUp; }
+			if (sumAverage < best) { filter = FILTER_AVERAGE; best = sumAverage; }
+			if (sumPaeth < best) { filter = FILTER_PAETH; best = sumPaeth; }
+			
+			dest[destOffset] = (byte) filter;
+			destOffset++;
+			for (int i=0; i<rowBytes; i++) {
+				int x = row[offset + i] & 0xFF;
+				int a = (i >= bytesPerPixel) ? (row[offset + i - bytesPerPixel] & 0xFF) : 0;
+				int b = prior[priorOffset + i] & 0xFF;
+				
+				int predictor;
+				switch (filter) {
+					case FILTER_SUB:
+						predictor = a;
+						break;
+					case FILTER_UP:
+						predictor = b;
+						break;
+					case FILTER_AVERAGE:
+						predictor = (a + b) >>> 1;
+						break;
+					case FILTER_PAETH:
+						int c = (i >= bytesPerPixel) ? (prior[priorOffset + i - bytesPerPixel] & 0xFF) : 0;
+						predictor = paeth(a, b, c);
+						break;
+					default:
+						predictor = 0;
+				}
+				dest[destOffset + i] = (byte) (x - predictor);
+			}
+		}
+		
+		private static int paeth(int a, int b, int c) {
+			int p = a + b - c;
+			int pa = Math.abs(p - a);
+			int pb = Math.abs(p - b);
+			int pc = Math.abs(p - c);
+			
+			if (pa <= pb && pa <= pc) {
+				return a;
+			} else if (pb <= pc) {
+				return b;
+			}
+			return c;
+		}
+	}
+	
+}
@@ -0,0 +1,90 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+/**
+ * A <code>RenderListener</code> is told how long each phase of generating a 
+ * chart took and how much work it involved, so that the cost of charts can
+ * be monitored, for example by recording each phase as a timer in a metrics
+ * registry or as a custom profiling event. A listener is registered with 
+ * <code>HeatChart.setRenderListener</code>, and no timings are taken at all
+ * when none is registered.
+ * 
+ * <p>
+ * All durations are in nanoseconds, as measured by 
+ * <code>System.nanoTime()</code>. Each method is called on the thread that 
+ * generated the chart, after the phase has finished, so implementations 
+ * should return quickly. A chart that is drawn in several bands, as by 
+ * <code>saveBanded</code>, reports the heat map and axis values of each band
+ * separately.
+ * 
+ * @see HeatChart#setRenderListener(RenderListener)
+ * @since 0.6
+ */
+public interface RenderListener {
+
+	/**
+	 * Called after the components of a chart have been measured. This is 
+	 * only done for the first chart, and again after a setting that changes
+	 * the layout, as the measurements are otherwise reused.
+	 * 
+	 * @param durationNanos the time taken to measure the chart.
+	 */
+	void layoutMeasured(long durationNanos);
+	
+	/**
+	 * Called after cells of the heat map have been coloured and written to 
+	 * the chart image, whether all of them, a band of rows of them, or only 
+	 * those cells of a retained image which have changed.
+	 * 
+	 * @param durationNanos the time taken to draw the cells.
+	 * @param cells the number of cells drawn.
+	 * @param pixels the number of pixels written for those cells.
+	 */
+	void heatMapDrawn(long durationNanos, long cells, long pixels);
+	
+	/**
+	 * Called after the x-axis and y-axis values have been drawn.
+	 * 
+	 * @param durationNanos the time taken to draw the axis values.
+	 */
+	void axisValuesDrawn(long durationNanos);
+	
+	/**
+	 * Called after a whole chart image has been generated, including all of
+	 * the phases reported separately.
+	 * 
+	 * @param durationNanos the time taken to generate the chart image.
+	 * @param pixels the number of pixels in the chart image.
+	 */
+	void chartDrawn(long durationNanos, long pixels);
+	
+	/**
+	 * Called after a chart has been encoded to a file, stream or channel. For
+	 * a chart saved in bands, which are encoded as they are drawn, the 
+	 * duration covers generating the whole chart, including the heat map and
+	 * axis value phases reported for each band.
+	 * 
+	 * @param durationNanos the time taken to encode the chart.
+	 * @param bytes the number of bytes of the encoded image.
+	 */
+	void chartEncoded(long durationNanos, long bytes);
+	
+}
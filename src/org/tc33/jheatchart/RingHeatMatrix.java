@@ -0,0 +1,139 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+/**
+ * A {@link HeatMatrix} of a fixed number of columns which acts as a rolling 
+ * window over a series of columns, such as a column of z-values for each 
+ * second over the last few minutes. Appending a new column discards the 
+ * oldest, the first, and adds the new one as the last. 
+ * 
+ * <p>
+ * The columns are held in a ring buffer, so appending a column only writes 
+ * that column's z-values, without moving any others. Columns are indexed 
+ * circularly from the oldest when read. A {@link HeatChart} can append columns
+ * to its z-values with <code>appendColumn(double[])</code>, which also 
+ * advances the x-values and scrolls a retained chart image rather than 
+ * drawing it again.
+ * 
+ * @since 0.6
+ */
+public class RingHeatMatrix implements MutableHeatMatrix {
+
+	// The z-values in row-major order, with columns in the order of the ring.
+	private final double[] values;
+	private final int rows;
+	private final int columns;
+	
+	// The position in each row of the oldest column.
+	private int start;
+	
+	/**
+	 * Constructs a matrix with the given number of rows and columns, in which
+	 * all z-values are initially zero.
+	 * 
+	 * @param rows the number of rows of z-values.
+	 * @param columns the number of columns of z-values held in the window.
+	 */
+	public RingHeatMatrix(int rows, int columns) {
+		if (rows < 1 || columns < 1) {
+			throw new IllegalArgumentException("Matrix must have at least one row and column.");
+		}
+		
+		this.values = new double[rows * columns];
+		this.rows = rows;
+		this.columns = columns;
+	}
+	
+	/**
+	 * Appends a column of z-values as the last column of the matrix, 
+	 * discarding the first column. Every other column moves one position 
+	 * towards the first.
+	 * 
+	 * @param column the z-values of the new column, which must have at least
+	 * <code>getRowCount()</code> elements.
+	 */
+	public void appendColumn(double[] column) {
+		if (column.length < rows) {
+			throw new IllegalArgumentException("Column must have a z-value for every row.");
+		}
+		
+		// The oldest column's position is reused for the new column.
+		int index = start;
+		for (int i=0; i<rows; i++) {
+			values[index] = column[i];
+			index += columns;
+		}
+		
+		start = (start + 1 == columns) ? 0 : start + 1;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getColumnCount() {
+		return columns;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public double get(int row, int column) {
+		return values[index(row, column)];
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void set(int row, int column, double value) {
+		values[index(row, column)] = value;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public void getRow(int row, double[] dest) {
+		// The oldest columns are at the end of the row, the newest wrap round.
+		int offset = row * columns;
+		int tail = columns - start;
+		System.arraycopy(values, offset + start, dest, 0, tail);
+		System.arraycopy(values, offset, dest, tail, start);
+	}
+	
+	/*
+	 * Returns the position in the array of the z-value at the given row and 
+	 * column of the window.
+	 */
+	private int index(int row, int column) {
+		int position = start + column;
+		if (position >= columns) {
+			position -= columns;
+		}
+		return (row * columns) + position;
+	}
+	
+}
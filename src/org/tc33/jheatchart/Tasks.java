@@ -0,0 +1,94 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Helpers for running tasks on an executor and waiting for them to finish.
+ */
+final class Tasks {
+
+	private Tasks() {
+	}
+	
+	/*
+	 * Runs all the tasks on the executor, waits for them to complete and 
+	 * returns their results in order. An exception thrown by a task is 
+	 * rethrown unchecked on the calling thread. The activity is used to 
+	 * describe failures.
+	 */
+	static <T> List<T> invokeAll(ExecutorService executor, List<? extends Callable<T>> tasks, String activity) {
+		List<Future<T>> futures;
+		try {
+			futures = executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while " + activity, e);
+		}
+		
+		List<T> results = new ArrayList<T>(tasks.size());
+		for (Future<T> future: futures) {
+			results.add(get(future, activity));
+		}
+		return results;
+	}
+	
+	/*
+	 * Waits for the task to complete and returns its result. An exception 
+	 * thrown by the task is rethrown unchecked on the calling thread. The 
+	 * activity is used to describe failures.
+	 */
+	static <T> T get(Future<T> future, String activity) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while " + activity, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Failed while " + activity, cause);
+		}
+	}
+	
+	/*
+	 * Returns how many bands to split the given number of rows into, so that
+	 * each processor gets a few bands to balance the load.
+	 */
+	static int bandCount(int rows, int bandsPerProcessor) {
+		return Math.max(1, Math.min(rows, Runtime.getRuntime().availableProcessors() * bandsPerProcessor));
+	}
+	
+	/*
+	 * Returns the first row of the given band, where the rows are split as 
+	 * evenly as possible between the bands. The last row of a band is the 
+	 * first row of the next band.
+	 */
+	static int bandStart(int band, int bands, int rows) {
+		return (int) (((long) band * rows) / bands);
+	}
+	
+}
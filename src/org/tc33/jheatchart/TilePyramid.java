@@ -0,0 +1,370 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A <code>TilePyramid</code> generates the heat map of a {@link HeatChart} 
+ * as a pyramid of fixed size square tiles for every zoom level, for display 
+ * in a zoomable slippy map viewer. Only the heat map itself is drawn, with 
+ * the chart's z-values, low and high values and colour settings, and 
+ * without a title, axes or margins.
+ * 
+ * <p>
+ * At the deepest zoom level each z-value is one pixel, and the level above 
+ * has half as many pixels in each direction, down to level 0 where all the 
+ * z-values fit in a single tile. Each level is built by aggregating 2x2 
+ * blocks of values of the level below, so the z-values are read only once.
+ * The aggregates are kept exact, so a tile holds the same values as 
+ * downsampling the z-values directly with the same {@link Aggregation}.
+ * Tiles are generated depth first, each parent once its four children are
+ * complete, so only a few tiles per zoom level are held in memory at once, 
+ * and in parallel if a <code>ForkJoinPool</code> is given.
+ * 
+ * <p>
+ * The z-values fill the tiles from the top left corner. Pixels beyond the 
+ * z-values, and cells with only NaN values, are transparent, and tiles 
+ * beyond the z-values are not generated at all. The chart's settings must 
+ * not be changed while tiles are being generated.
+ * 
+ * @since 0.6
+ */
+public class TilePyramid {
+
+	private final HeatChart chart;
+	
+	private int tileSize;
+	private ChartEncoder encoder;
+	private Aggregation aggregation;
+	
+	/**
+	 * Constructs a pyramid of 256 pixel PNG tiles of the given chart's heat 
+	 * map, aggregated with the chart's downsample aggregation.
+	 * 
+	 * @param chart the chart whose z-values and colour settings to use.
+	 */
+	public TilePyramid(HeatChart chart) {
+		this.chart = chart;
+		this.tileSize = 256;
+		this.encoder = new PngEncoder();
+		this.aggregation = chart.getDownsampleAggregation();
+	}
+	
+	/**
+	 * Returns the width and height of each tile in pixels.
+	 * 
+	 * @return the size of the tiles.
+	 */
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	/**
+	 * Sets the width and height of each tile in pixels, which must be even.
+	 * 
+	 * <p>
+	 * Defaults to 256.
+	 * 
+	 * @param tileSize the size of the tiles.
+	 */
+	public void setTileSize(int tileSize) {
+		if (tileSize < 2 || tileSize % 2 != 0) {
+			throw new IllegalArgumentException("Tile size must be a positive even number: " + tileSize);
+		}
+		this.tileSize = tileSize;
+	}
+	
+	/**
+	 * Returns the encoder that tiles are encoded with.
+	 * 
+	 * @return the tile encoder.
+	 */
+	public ChartEncoder getEncoder() {
+		return encoder;
+	}
+	
+	/**
+	 * Sets the encoder that tiles are encoded with. The encoder must be safe 
+	 * for use from multiple threads if tiles are generated in parallel. Tiles
+	 * are generated with transparency only if the encoder supports it.
+	 * 
+	 * <p>
+	 * Defaults to a <code>PngEncoder</code>.
+	 * 
+	 * @param encoder the tile encoder.
+	 */
+	public void setEncoder(ChartEncoder encoder) {
+		this.encoder = encoder;
+	}
+	
+	/**
+	 * Returns the aggregation used to combine blocks of z-values for the 
+	 * zoom levels above the deepest.
+	 * 
+	 * @return the aggregation of z-values.
+	 */
+	public Aggregation getAggregation() {
+		return aggregation;
+	}
+	
+	/**
+	 * Sets the aggregation used to combine blocks of z-values for the zoom 
+	 * levels above the deepest. When <code>SUM</code> is used the low and 
+	 * high values are multiplied by the number of z-values in a block, so 
+	 * that the full range of colours remains in use.
+	 * 
+	 * <p>
+	 * Defaults to the chart's downsample aggregation.
+	 * 
+	 * @param aggregation the aggregation of z-values.
+	 */
+	public void setAggregation(Aggregation aggregation) {
+		this.aggregation = aggregation;
+	}
+	
+	/**
+	 * Returns the deepest zoom level, at which each z-value is one pixel. 
+	 * Zoom levels run from 0 to this level inclusive.
+	 * 
+	 * @return the deepest zoom level for the chart's current z-values.
+	 */
+	public int getMaxZoom() {
+		return Tiles.getMaxZoom(chart.getZMatrix(), tileSize);
+	}
+	
+	/**
+	 * Generates every tile of every zoom level on the calling thread, and 
+	 * writes them to the given sink.
+	 * 
+	 * @param sink the sink to write the encoded tiles to.
+	 * @throws IOException if a tile cannot be encoded or written.
+	 */
+	public void generate(TileSink sink) throws IOException {
+		generate(sink, null);
+	}
+	
+	/**
+	 * Generates every tile of every zoom level, and writes them to the given 
+	 * sink. The four child tiles of each tile are generated as parallel tasks
+	 * in the given pool, so the sink is written to from multiple threads.
+	 * 
+	 * @param sink the sink to write the encoded tiles to.
+	 * @param pool the pool to generate tiles in, or <tt>null</tt> to generate
+	 * them on the calling thread.
+	 * @throws IOException if a tile cannot be encoded or written.
+	 */
+	public void generate(TileSink sink, ForkJoinPool pool) throws IOException {
+		Job job = new Job(sink, pool != null);
+		TileTask root = new TileTask(job, 0, 0, 0);
+		
+		try {
+			if (pool == null) {
+				root.invoke();
+			} else {
+				pool.invoke(root);
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/*
+	 * The settings and z-values that one generation of the pyramid uses, 
+	 * fixed when it starts.
+	 */
+	private final class Job {
+		
+		final TileSink sink;
+		final boolean parallel;
+		
+		final HeatMatrix data;
+		final int tileSize = TilePyramid.this.tileSize;
+		final ChartEncoder encoder = TilePyramid.this.encoder;
+		final Aggregation aggregation = TilePyramid.this.aggregation;
+		final double low = chart.getLowValue();
+		final double high = chart.getHighValue();
+		final int maxZoom = getMaxZoom();
+		
+		Job(TileSink sink, boolean parallel) {
+			this.sink = sink;
+			this.parallel = parallel;
+			this.data = chart.getZMatrix();
+		}
+		
+		/*
+		 * Whether the tile lies at least partly within the z-values.
+		 */
+		boolean hasTile(int zoom, int x, int y) {
+			long cellsPerTile = tileSize * Tiles.getBlockSize(zoom, maxZoom);
+			return (x * cellsPerTile < data.getColumnCount()) && (y * cellsPerTile < data.getRowCount());
+		}
+	}
+	
+	/*
+	 * The aggregates of the z-values shown by each pixel of a tile, and how 
+	 * many z-values each aggregates.
+	 */
+	private static final class TileValues {
+		
+		final double[] aggregates;
+		final int[] counts;
+		
+		TileValues(int tileSize, double initialValue) {
+			aggregates = new double[tileSize * tileSize];
+			counts = new int[tileSize * tileSize];
+			Arrays.fill(aggregates, initialValue);
+		}
+	}
+	
+	/*
+	 * Generates one tile, from the z-values at the deepest zoom level or from
+	 * its four child tiles otherwise, and writes it to the sink. The tile's 
+	 * values are returned for its parent to aggregate.
+	 */
+	private final class TileTask extends RecursiveTask<TileValues> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Job job;
+		private final int zoom;
+		private final int x;
+		private final int y;
+		
+		TileTask(Job job, int zoom, int x, int y) {
+			this.job = job;
+			this.zoom = zoom;
+			this.x = x;
+			this.y = y;
+		}
+		
+		@Override
+		protected TileValues compute() {
+			TileValues values;
+			if (zoom == job.maxZoom) {
+				values = readValues();
+			} else {
+				values = aggregateChildren();
+			}
+			
+			try {
+				writeTile(values);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return values;
+		}
+		
+		/*
+		 * Reads the z-values covered by a tile of the deepest zoom level.
+		 */
+		private TileValues readValues() {
+			int size = job.tileSize;
+			HeatMatrix data = job.data;
+			TileValues values = new TileValues(size, job.aggregation.initialValue());
+			
+			int fromRow = y * size;
+			int fromColumn = x * size;
+			int toRow = Math.min(data.getRowCount(), fromRow + size);
+			int toColumn = Math.min(data.getColumnCount(), fromColumn + size);
+			
+			for (int row=fromRow; row<toRow; row++) {
+				int offset = (row - fromRow) * size;
+				for (int column=fromColumn; column<toColumn; column++) {
+					double z = data.get(row, column);
+					if (z == z) {
+						values.aggregates[offset + column - fromColumn] = z;
+						values.counts[offset + column - fromColumn] = 1;
+					}
+				}
+			}
+			return values;
+		}
+		
+		/*
+		 * Generates the child tiles that lie within the z-values and combines
+		 * each 2x2 block of their pixels into one pixel of this tile.
+		 */
+		private TileValues aggregateChildren() {
+			List<TileTask> children = new ArrayList<TileTask>(4);
+			for (int i=0; i<4; i++) {
+				int childX = (x * 2) + (i % 2);
+				int childY = (y * 2) + (i / 2);
+				if (job.hasTile(zoom + 1, childX, childY)) {
+					children.add(new TileTask(job, zoom + 1, childX, childY));
+				}
+			}
+			
+			if (job.parallel) {
+				invokeAll(children);
+			} else {
+				for (TileTask child: children) {
+					child.invoke();
+				}
+			}
+			
+			int size = job.tileSize;
+			int half = size / 2;
+			Aggregation aggregation = job.aggregation;
+			TileValues values = new TileValues(size, aggregation.initialValue());
+			
+			for (TileTask child: children) {
+				TileValues childValues = child.getRawResult();
+				
+				// Each child fills one quarter of this tile.
+				int quarterX = (child.x % 2) * half;
+				int quarterY = (child.y % 2) * half;
+				
+				for (int i=0; i<half; i++) {
+					int offset = ((quarterY + i) * size) + quarterX;
+					for (int j=0; j<half; j++) {
+						double aggregate = values.aggregates[offset + j];
+						int count = 0;
+						
+						for (int k=0; k<4; k++) {
+							int childOffset = (((i * 2) + (k / 2)) * size) + (j * 2) + (k % 2);
+							if (childValues.counts[childOffset] > 0) {
+								aggregate = aggregation.combine(aggregate, childValues.aggregates[childOffset]);
+								count += childValues.counts[childOffset];
+							}
+						}
+						
+						values.aggregates[offset + j] = aggregate;
+						values.counts[offset + j] = count;
+					}
+				}
+			}
+			return values;
+		}
+		
+		/*
+		 * Colours the tile's pixels, encodes it and writes it to the sink.
+		 */
+		private void writeTile(TileValues values) throws IOException {
+			long blockSize = Tiles.getBlockSize(zoom, job.maxZoom);
+			byte[] tile = Tiles.encodeTile(chart, job.encoder, job.aggregation, job.tileSize, blockSize, job.low, job.high, values.aggregates, values.counts);
+			job.sink.writeTile(zoom, x, y, tile);
+		}
+	}
+	
+}
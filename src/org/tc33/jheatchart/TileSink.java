@@ -0,0 +1,48 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.io.IOException;
+
+/**
+ * A <code>TileSink</code> receives the encoded tiles generated by a 
+ * {@link TilePyramid}. Tiles are written from multiple threads at once when 
+ * the pyramid is generated in parallel, so implementations must be thread 
+ * safe.
+ * 
+ * @see DirectoryTileSink
+ * @see ZipTileSink
+ * @since 0.6
+ */
+public interface TileSink {
+
+	/**
+	 * Stores one encoded tile.
+	 * 
+	 * @param zoom the zoom level of the tile, where level 0 is a single tile 
+	 * showing all the z-values.
+	 * @param x the column of the tile within its zoom level.
+	 * @param y the row of the tile within its zoom level.
+	 * @param data the encoded tile image.
+	 * @throws IOException if the tile cannot be stored.
+	 */
+	void writeTile(int zoom, int x, int y, byte[] data) throws IOException;
+	
+}
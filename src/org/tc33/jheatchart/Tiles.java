@@ -0,0 +1,88 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+
+/*
+ * Helpers shared by the generators of heat map tiles, which divide the heat
+ * map into square tiles at a series of zoom levels. At the deepest zoom 
+ * level each z-value is one pixel, and each level above aggregates 2x2 
+ * blocks of the pixels of the level below.
+ */
+final class Tiles {
+
+	private Tiles() {
+	}
+	
+	/*
+	 * Returns the deepest zoom level for the given z-values, the first at 
+	 * which every z-value is one pixel.
+	 */
+	static int getMaxZoom(HeatMatrix data, int tileSize) {
+		long cells = Math.max(data.getRowCount(), data.getColumnCount());
+		
+		int zoom = 0;
+		while (((long) tileSize << zoom) < cells) {
+			zoom++;
+		}
+		return zoom;
+	}
+	
+	/*
+	 * Returns how many z-values wide and high each pixel of a tile at the 
+	 * given zoom level covers.
+	 */
+	static long getBlockSize(int zoom, int maxZoom) {
+		return 1L << (maxZoom - zoom);
+	}
+	
+	/*
+	 * Colours a tile from the aggregate and count of the z-values of each of
+	 * its pixels, and returns it encoded. Pixels of no z-values are left 
+	 * transparent. For sums the low and high values are scaled up to the 
+	 * number of z-values in a pixel.
+	 */
+	static byte[] encodeTile(HeatChart chart, ChartEncoder encoder, Aggregation aggregation, int tileSize, long blockSize, 
+							 double low, double high, double[] aggregates, int[] counts) throws IOException {
+		if (aggregation == Aggregation.SUM) {
+			low *= (double) blockSize * blockSize;
+			high *= (double) blockSize * blockSize;
+		}
+		
+		boolean alpha = encoder.isAlphaSupported();
+		BufferedImage tile = new BufferedImage(tileSize, tileSize, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+		
+		for (int i=0; i<pixels.length; i++) {
+			if (counts[i] > 0) {
+				double value = aggregation.complete(aggregates[i], counts[i]);
+				pixels[i] = chart.getCellColour(value, low, high);
+			}
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encoder.encode(tile, out);
+		return out.toByteArray();
+	}
+	
+}
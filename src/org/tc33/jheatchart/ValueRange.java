@@ -0,0 +1,192 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The range of the finite z-values of a matrix, found in a single pass which
+ * gives both the smallest and largest values. NaN and infinite values are 
+ * skipped. If a matrix has no finite values at all then both the minimum and
+ * maximum are NaN.
+ * 
+ * <p>
+ * Large matrices may be scanned in parallel by giving an executor, in which 
+ * case bands of rows are scanned as separate tasks and their ranges combined.
+ * 
+ * @since 0.6
+ */
+public final class ValueRange {
+
+	// Matrices with fewer values than this are not worth splitting up.
+	private static final long MIN_PARALLEL_VALUES = 1 << 18;
+	
+	// How many bands of rows to split the matrix into per processor.
+	private static final int BANDS_PER_PROCESSOR = 4;
+	
+	private final double min;
+	private final double max;
+	
+	/*
+	 * Constructs a range from the given bounds, where an empty range is 
+	 * represented by a min greater than the max.
+	 */
+	private ValueRange(double min, double max) {
+		if (min > max) {
+			this.min = Double.NaN;
+			this.max = Double.NaN;
+		} else {
+			this.min = min;
+			this.max = max;
+		}
+	}
+	
+	/**
+	 * Finds the smallest and largest finite values in the given matrix, in a 
+	 * single pass on the calling thread.
+	 * 
+	 * @param values the matrix to scan.
+	 * @return the range of the finite values in the matrix.
+	 */
+	public static ValueRange scan(HeatMatrix values) {
+		double[] bounds = scanRows(values, 0, values.getRowCount());
+		return new ValueRange(bounds[0], bounds[1]);
+	}
+	
+	/**
+	 * Finds the smallest and largest finite values in the given matrix. If the 
+	 * executor is not null and the matrix is large, then bands of rows are 
+	 * scanned in parallel on the executor.
+	 * 
+	 * @param values the matrix to scan.
+	 * @param executor the executor to scan bands of rows on, or <tt>null</tt> 
+	 * to scan on the calling thread.
+	 * @return the range of the finite values in the matrix.
+	 */
+	public static ValueRange scan(final HeatMatrix values, ExecutorService executor) {
+		int rows = values.getRowCount();
+		long noValues = (long) rows * values.getColumnCount();
+		
+		if (executor == null || rows < 2 || noValues < MIN_PARALLEL_VALUES) {
+			return scan(values);
+		}
+		
+		int noBands = Tasks.bandCount(rows, BANDS_PER_PROCESSOR);
+		List<Callable<double[]>> bands = new ArrayList<Callable<double[]>>(noBands);
+		for (int i=0; i<noBands; i++) {
+			final int fromRow = Tasks.bandStart(i, noBands, rows);
+			final int toRow = Tasks.bandStart(i + 1, noBands, rows);
+			
+			bands.add(new Callable<double[]>() {
+				public double[] call() {
+					return scanRows(values, fromRow, toRow);
+				}
+			});
+		}
+		
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double[] bounds: Tasks.invokeAll(executor, bands, "scanning z-values")) {
+			min = Math.min(min, bounds[0]);
+			max = Math.max(max, bounds[1]);
+		}
+		return new ValueRange(min, max);
+	}
+	
+	/**
+	 * Finds the smallest and largest finite values in the given 2-dimensional
+	 * array, in a single pass on the calling thread.
+	 * 
+	 * @param values the array to scan, where each element is a row.
+	 * @return the range of the finite values in the array.
+	 */
+	public static ValueRange scan(double[][] values) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i=0; i<values.length; i++) {
+			double[] row = values[i];
+			for (int j=0; j<row.length; j++) {
+				double z = row[j];
+				// Comparisons with NaN are false, so only infinities need excluding.
+				if (z < min && z != Double.NEGATIVE_INFINITY) {
+					min = z;
+				}
+				if (z > max && z != Double.POSITIVE_INFINITY) {
+					max = z;
+				}
+			}
+		}
+		return new ValueRange(min, max);
+	}
+	
+	/*
+	 * Scans the given range of rows, returning the smallest and largest finite 
+	 * values found as a pair, or infinite bounds if none were found.
+	 */
+	private static double[] scanRows(HeatMatrix values, int fromRow, int toRow) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		double[] row = new double[values.getColumnCount()];
+		for (int i=fromRow; i<toRow; i++) {
+			values.getRow(i, row);
+			for (int j=0; j<row.length; j++) {
+				double z = row[j];
+				// Comparisons with NaN are false, so only infinities need excluding.
+				if (z < min && z != Double.NEGATIVE_INFINITY) {
+					min = z;
+				}
+				if (z > max && z != Double.POSITIVE_INFINITY) {
+					max = z;
+				}
+			}
+		}
+		return new double[]{min, max};
+	}
+	
+	/**
+	 * Returns the smallest finite value, or NaN if there were no finite values.
+	 * 
+	 * @return the minimum value.
+	 */
+	public double getMin() {
+		return min;
+	}
+	
+	/**
+	 * Returns the largest finite value, or NaN if there were no finite values.
+	 * 
+	 * @return the maximum value.
+	 */
+	public double getMax() {
+		return max;
+	}
+	
+	/**
+	 * Returns a string representation of the range.
+	 * 
+	 * @return the range as a string.
+	 */
+	@Override
+	public String toString() {
+		return "[" + min + ", " + max + "]";
+	}
+	
+}
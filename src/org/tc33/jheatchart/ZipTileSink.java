@@ -0,0 +1,94 @@
+/*  
+ *  Copyright 2010 Tom Castle (www.tc33.org)
+ *  Licensed under GNU Lesser General Public License
+ * 
+ *  This file is part of JHeatChart - the heat maps charting api for Java.
+ *
+ *  JHeatChart is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published 
+ *  by the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  JHeatChart is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JHeatChart.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tc33.jheatchart;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * A {@link TileSink} that packs tiles into a single zip archive, with each 
+ * tile stored as the entry <tt>zoom/x/y.extension</tt>. Tiles are already 
+ * compressed image files, so they are stored without further compression.
+ * The archive is complete once the sink is closed.
+ * 
+ * @since 0.6
+ */
+public class ZipTileSink implements TileSink, Closeable {
+
+	private final ZipOutputStream zip;
+	private final String extension;
+	private final CRC32 crc = new CRC32();
+	
+	/**
+	 * Constructs a sink that writes a zip archive of tiles to the given 
+	 * stream, with the given file extension. The stream is closed when the 
+	 * sink is closed.
+	 * 
+	 * @param out the stream to write the archive to.
+	 * @param extension the file extension of the tiles, such as 
+	 * <tt>"png"</tt>.
+	 */
+	public ZipTileSink(OutputStream out, String extension) {
+		this.zip = new ZipOutputStream(new BufferedOutputStream(out));
+		this.extension = extension;
+	}
+	
+	/**
+	 * Constructs a sink that writes a zip archive of tiles to the given file,
+	 * with the given file extension.
+	 * 
+	 * @param file the file to write the archive to.
+	 * @param extension the file extension of the tiles, such as 
+	 * <tt>"png"</tt>.
+	 * @throws IOException if the file cannot be created.
+	 */
+	public ZipTileSink(File file, String extension) throws IOException {
+		this(new FileOutputStream(file), extension);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized void writeTile(int zoom, int x, int y, byte[] data) throws IOException {
+		ZipEntry entry = new ZipEntry(zoom + "/" + x + "/" + y + "." + extension);
+		
+		// Stored entries must give their size and checksum up front.
+		crc.reset();
+		crc.update(data);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(data.length);
+		entry.setCompressedSize(data.length);
+		entry.setCrc(crc.getValue());
+		
+		zip.putNextEntry(entry);
+		zip.write(data);
+		zip.closeEntry();
+	}
+	
+	/**
+	 * Completes the archive and closes the underlying stream.
+	 * 
+	 * @throws IOException if the archive cannot be written.
+	 */
+	public synchronized void close() throws IOException {
+		zip.close();
+	}
+	
+}